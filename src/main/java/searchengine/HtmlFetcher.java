@@ -1,8 +1,5 @@
 package searchengine;
 
-import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
-import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
@@ -13,21 +10,15 @@ import searchengine.config.SitesList;
 import searchengine.model.Page;
 import searchengine.model.Site;
 import searchengine.model.IndexingStatus;
-import searchengine.model.Lemma;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
-import searchengine.repository.LemmaRepository;
-import org.jsoup.Jsoup;  // Добавь в импорты, если используешь Jsoup
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import searchengine.services.PageContentStore;
+import searchengine.services.PageFetcher;
+import searchengine.services.PageIndexer;
+import searchengine.util.HtmlTextExtractor;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
@@ -40,21 +31,19 @@ public class HtmlFetcher implements CommandLineRunner {
     private final SitesList sitesList;
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-
-    private LuceneMorphology russianMorphology;
-    private LuceneMorphology englishMorphology;
+    private final PageIndexer pageIndexer;
+    private final PageContentStore pageContentStore;
+    private final PageFetcher pageFetcher;
 
     @Autowired
-    public HtmlFetcher(SitesList sitesList, SiteRepository siteRepository, PageRepository pageRepository, LemmaRepository lemmaRepository) throws IOException {
+    public HtmlFetcher(SitesList sitesList, SiteRepository siteRepository, PageRepository pageRepository, PageIndexer pageIndexer,
+                       PageContentStore pageContentStore, PageFetcher pageFetcher) {
         this.sitesList = sitesList;
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-
-        // Инициализация лемматизаторов для русского и английского языков
-        russianMorphology = new RussianLuceneMorphology();
-        englishMorphology = new EnglishLuceneMorphology();
+        this.pageIndexer = pageIndexer;
+        this.pageContentStore = pageContentStore;
+        this.pageFetcher = pageFetcher;
     }
 
     public void fetchAll() {
@@ -106,25 +95,24 @@ public class HtmlFetcher implements CommandLineRunner {
     private String fetchHtml(String siteUrl) {
         logger.debug("🕵️‍♂️ Загружаю HTML для сайта: {}", siteUrl);
         try {
-            URL url = new URL(siteUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-
-            try (Scanner scanner = new Scanner(connection.getInputStream())) {
-                StringBuilder html = new StringBuilder();
-                while (scanner.hasNext()) {
-                    html.append(scanner.nextLine()).append("\n");
-                }
+            PageFetcher.Response response = pageFetcher.fetch(siteUrl);
+            if (response.statusCode() >= 400 || response.body() == null) {
+                throw new IOException("Ошибка HTTP " + response.statusCode());
+            }
+            byte[] body = response.body();
+            String html = new String(body, HtmlTextExtractor.charsetOf(body, response.charset()));
 
-                // Логируем полный HTML-контент (или его часть для более удобного вывода)
-                String htmlSnippet = truncateHtml(html.toString(), 500); // Ограничиваем вывод 500 символами для удобства
-                logger.debug("✅ HTML загружен для сайта: {}\n{}", siteUrl, htmlSnippet);
+            // Логируем полный HTML-контент (или его часть для более удобного вывода)
+            String htmlSnippet = truncateHtml(html, 500); // Ограничиваем вывод 500 символами для удобства
+            logger.debug("✅ HTML загружен для сайта: {}\n{}", siteUrl, htmlSnippet);
 
-                return html.toString();
-            }
+            return html;
         } catch (IOException e) {
             logger.error("❌ Ошибка загрузки сайта {}: {}", siteUrl, e.getMessage());
             return "Ошибка загрузки: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Ошибка загрузки: загрузка прервана";
         }
     }
 
@@ -161,63 +149,17 @@ public class HtmlFetcher implements CommandLineRunner {
         page.setPath("");
         page.setContent(html);
         page.setCode(200);
-        pageRepository.save(page);
-
-        // Лемматизация
-        Map<String, Integer> lemmaCounts = getLemmas(html);
+        page.setContentType("text/html");
+        // Страница видна поиску только в активном поколении сайта
+        page.setGeneration(site.getActiveGeneration());
+        pageContentStore.save(page, pageRepository);
 
-        // Логируем леммы перед сохранением
-        logger.info("📌 Леммы для сайта {}: {}", site.getUrl(), lemmaCounts);
-
-        // Сохраняем леммы в БД
-        for (Map.Entry<String, Integer> entry : lemmaCounts.entrySet()) {
-            Lemma lemma = new Lemma();
-            lemma.setSite(site);
-            lemma.setLemma(entry.getKey());
-            lemma.setFrequency(entry.getValue());
-            lemmaRepository.save(lemma);
-        }
+        // Лемматизация и запись лемм и индекса одним пакетом
+        pageIndexer.indexPages(List.of(page));
 
         logger.debug("✅ Страница и леммы сохранены для сайта: {}", site.getUrl());
     }
 
-    private Map<String, Integer> getLemmas(String html) {
-        Map<String, Integer> lemmaCounts = new HashMap<>();
-
-        // Удаляем HTML-теги перед анализом
-        String text = Jsoup.parse(html).text();
-
-        // Регулярное выражение для поиска слов
-        Pattern wordPattern = Pattern.compile("\\p{L}+");
-        Matcher matcher = wordPattern.matcher(text);
-
-        while (matcher.find()) {
-            String word = matcher.group().toLowerCase(); // Приводим к нижнему регистру
-
-            if (word.matches(".*[а-яА-ЯёЁ].*")) {
-                // Если слово содержит русские буквы, используем русский морфологический анализатор
-                try {
-                    List<String> normalForms = russianMorphology.getNormalForms(word);
-                    if (!normalForms.isEmpty()) {
-                        String lemma = normalForms.get(0);
-                        lemmaCounts.put(lemma, lemmaCounts.getOrDefault(lemma, 0) + 1);
-                    }
-                } catch (Exception ignored) {}
-            } else if (word.matches(".*[a-zA-Z].*")) {
-                // Если слово содержит латинские буквы, используем английский морфологический анализатор
-                try {
-                    List<String> normalForms = englishMorphology.getNormalForms(word);
-                    if (!normalForms.isEmpty()) {
-                        String lemma = normalForms.get(0);
-                        lemmaCounts.put(lemma, lemmaCounts.getOrDefault(lemma, 0) + 1);
-                    }
-                } catch (Exception ignored) {}
-            }
-        }
-
-        return lemmaCounts;
-    }
-
     @Override
     public void run(String... args) {
         logger.info("🚀 Приложение запущено!");
@@ -1,10 +1,11 @@
 package searchengine;
 
 import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
-import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import searchengine.services.MorphologyService;
+import searchengine.util.CharSliceCache;
+import searchengine.util.ObjectIntHashMap;
+import searchengine.util.Tokenizer;
 
-import java.io.IOException;
 import java.util.*;
 
 
@@ -13,58 +14,66 @@ public class Lemmatizer {
             "PREP", "CONJ", "PRCL", "INTJ" // Предлоги, союзы, частицы, междометия
     ));
 
-    private LuceneMorphology luceneMorphology;
+    private static final ThreadLocal<Tokenizer> TOKENIZER = ThreadLocal.withInitial(Tokenizer::new);
+    // Кэш «слово → лемма» у каждого потока свой; строка слова создаётся только при промахе.
+    // Русский и английский лемматизаторы разбирают слова разных алфавитов, поэтому кэш общий
+    private static final ThreadLocal<CharSliceCache<WordLemma>> WORD_LEMMAS =
+            ThreadLocal.withInitial(() -> new CharSliceCache<>(4096));
+    // Отметка в кэше для слов без леммы
+    private static final WordLemma NO_LEMMA = new WordLemma(null, 0);
+
+    private final LuceneMorphology luceneMorphology;
+    private final boolean russian;
 
     public Lemmatizer(String language) {
-        try {
-            // Выбираем лемматизатор в зависимости от языка
-            if ("ru".equalsIgnoreCase(language)) {
-                luceneMorphology = new RussianLuceneMorphology();
-            } else if ("en".equalsIgnoreCase(language)) {
-                luceneMorphology = new EnglishLuceneMorphology();
-            } else {
-                throw new IllegalArgumentException("Unsupported language: " + language);
-            }
-        } catch (IOException e) {
-            // Обрабатываем исключения, связанные с загрузкой данных лемматизатора
-            System.err.println("Error initializing lemmatizer: " + e.getMessage());
-            e.printStackTrace();
+        // Словари общие для всего приложения, новый лемматизатор их не загружает
+        if (!"ru".equalsIgnoreCase(language) && !"en".equalsIgnoreCase(language)) {
+            throw new IllegalArgumentException("Unsupported language: " + language);
         }
+        luceneMorphology = MorphologyService.getInstance().getMorphology(language);
+        russian = "ru".equalsIgnoreCase(language);
     }
 
-    public Map<String, Integer> getLemmas(String text) {
-        // Очищаем текст от всех небуквенных символов
-        text = text.replaceAll("[^a-zA-Zа-яА-ЯёЁ]", " "); // Заменяем все не-буквенные символы на пробелы
-        String[] words = text.split("\\s+"); // Разбиваем текст на слова
-        Map<String, Integer> lemmaCount = new HashMap<>();
+    public ObjectIntHashMap<String> getLemmas(String text) {
+        ObjectIntHashMap<String> lemmaCount = new ObjectIntHashMap<>();
 
-        for (String word : words) {
-            if (word.isEmpty()) {
-                continue; // Пропускаем пустые строки
+        // Разбираем текст на слова за один проход, без регулярных выражений
+        TOKENIZER.get().tokenize(text, (buffer, length, start, end, cyrillic) -> {
+            if (cyrillic != russian) {
+                return; // Слова другого алфавита словарём этого языка не разбираются
             }
-
-            // Приводим слово к нижнему регистру
-            word = word.toLowerCase();
-
-            // Лемматизация слова
-            List<String> lemmas = luceneMorphology.getNormalForms(word);
-            if (!lemmas.isEmpty()) {
-                String lemma = lemmas.get(0); // Берем первую лемму (основную)
-
-                // Получаем часть речи
-                List<String> grammemes = luceneMorphology.getMorphInfo(word);
-                for (String grammeme : grammemes) {
-                    // Если это не исключение, добавляем лемму в карту
-                    if (!isExcludedPartOfSpeech(grammeme)) {
-                        lemmaCount.put(lemma, lemmaCount.getOrDefault(lemma, 0) + 1);
-                    }
-                }
+            CharSliceCache<WordLemma> cache = WORD_LEMMAS.get();
+            WordLemma word = cache.get(buffer, length);
+            if (word == null) {
+                word = lemmatize(new String(buffer, 0, length));
+                cache.put(buffer, length, word);
             }
-        }
+            if (word.count > 0) {
+                lemmaCount.addTo(word.lemma, word.count);
+            }
+        });
 
         return lemmaCount;
     }
 
+    private WordLemma lemmatize(String word) {
+        // Лемматизация слова
+        List<String> lemmas = luceneMorphology.getNormalForms(word);
+        if (lemmas.isEmpty()) {
+            return NO_LEMMA;
+        }
+        String lemma = lemmas.get(0); // Берем первую лемму (основную)
+
+        // Получаем часть речи; лемма учитывается по разу на каждый разбор, не являющийся исключением
+        int count = 0;
+        for (String grammeme : luceneMorphology.getMorphInfo(word)) {
+            if (!isExcludedPartOfSpeech(grammeme)) {
+                count++;
+            }
+        }
+        return count == 0 ? NO_LEMMA : new WordLemma(lemma, count);
+    }
+
     private boolean isExcludedPartOfSpeech(String grammeme) {
         // Проверяем, является ли часть речи исключением
         for (String partOfSpeech : EXCLUDED_PARTS_OF_SPEECH) {
@@ -75,6 +84,17 @@ public class Lemmatizer {
         return false;
     }
 
+    // Лемма слова и сколько раз она засчитывается за одно вхождение слова
+    private static final class WordLemma {
+        private final String lemma;
+        private final int count;
+
+        WordLemma(String lemma, int count) {
+            this.lemma = lemma;
+            this.count = count;
+        }
+    }
+
     public static void main(String[] args) {
         // Тексты для обработки
         String russianText = "Повторное появление леопарда в Осетии позволяет предположить, что леопард постоянно обитает в некоторых районах Северного Кавказа.";
@@ -82,18 +102,14 @@ public class Lemmatizer {
 
         // Для русского текста
         Lemmatizer ruLemmatizer = new Lemmatizer("ru");
-        Map<String, Integer> ruResult = ruLemmatizer.getLemmas(russianText);
+        ObjectIntHashMap<String> ruResult = ruLemmatizer.getLemmas(russianText);
         System.out.println("Russian Lemmas:");
-        for (Map.Entry<String, Integer> entry : ruResult.entrySet()) {
-            System.out.println(entry.getKey() + " — " + entry.getValue());
-        }
+        ruResult.forEach((lemma, count) -> System.out.println(lemma + " — " + count));
 
         // Для английского текста
         Lemmatizer enLemmatizer = new Lemmatizer("en");
-        Map<String, Integer> enResult = enLemmatizer.getLemmas(englishText);
+        ObjectIntHashMap<String> enResult = enLemmatizer.getLemmas(englishText);
         System.out.println("\nEnglish Lemmas:");
-        for (Map.Entry<String, Integer> entry : enResult.entrySet()) {
-            System.out.println(entry.getKey() + " — " + entry.getValue());
-        }
+        enResult.forEach((lemma, count) -> System.out.println(lemma + " — " + count));
     }
 }
@@ -1,110 +1,110 @@
 package searchengine;
 
 import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
-import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
-import org.jsoup.Jsoup;
-
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import searchengine.services.MorphologyService;
+import searchengine.util.CharSliceCache;
+import searchengine.util.HtmlTextExtractor;
+import searchengine.util.ObjectIntHashMap;
+import searchengine.util.Tokenizer;
 
 public class TextProcessor {
 
-    // Инициализация морфологических анализаторов
-    private static LuceneMorphology russianMorph;
-    private static LuceneMorphology englishMorph;
-
-    static {
-        try {
-            // Инициализация морфологических анализаторов
-            russianMorph = new RussianLuceneMorphology();
-            englishMorph = new EnglishLuceneMorphology();
-        } catch (IOException e) {
-            // Обработка исключения, если не удалось загрузить морфологию
-            System.err.println("Ошибка при инициализации морфологического анализатора: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
+    // Словари загружаются один раз на приложение и разделяются с бинами Spring
+    private static final MorphologyService morphology = MorphologyService.getInstance();
+
+    // Разборщик и кэш «слово → лемма» у каждого потока свои: на частых словах не создаётся ни одной строки
+    private static final ThreadLocal<Tokenizer> TOKENIZERS = ThreadLocal.withInitial(Tokenizer::new);
+    private static final ThreadLocal<CharSliceCache<String>> WORD_LEMMAS =
+            ThreadLocal.withInitial(() -> new CharSliceCache<>(4096));
+    // Отметка в кэше для служебных и неизвестных слов
+    private static final String NO_LEMMA = "";
 
     // Метод для очистки текста от служебных частей речи и подсчета лемм
-    public static HashMap<String, Integer> processText(String text, String language) {
-        HashMap<String, Integer> lemmaCount = new HashMap<>();
+    public static ObjectIntHashMap<String> processText(String text, String language) {
+        ObjectIntHashMap<String> lemmaCount = new ObjectIntHashMap<>();
 
         // Убираем HTML-теги из текста
-        text = removeHtmlTags(text);
-
-        // Разделяем текст на слова по пробелам
-        String[] words = text.split("\\s+");
+        String plainText = removeHtmlTags(text);
 
         // Выбираем морфологический анализатор в зависимости от языка
-        LuceneMorphology luceneMorph = getMorphology(language);
-
-        if (luceneMorph == null) {
+        if (getMorphology(language) == null) {
             return lemmaCount; // Если морфология не была инициализирована, возвращаем пустой результат
         }
+        // Берём только слова алфавита выбранного языка
+        boolean russian = language.equalsIgnoreCase("ru");
+        boolean english = !russian;
 
-        // Регулярное выражение для удаления знаков препинания
-        Pattern pattern = Pattern.compile("[^a-zA-Zа-яА-ЯёЁ]");
+        TOKENIZERS.get().tokenize(plainText, (buffer, length, start, end, cyrillic) -> {
+            if (cyrillic != russian) {
+                return;
+            }
+            // Пропускаем слова с апострофами в английском языке (например, it's, I'm)
+            if (english && (isApostrophe(plainText, start - 1) || isApostrophe(plainText, end))) {
+                return;
+            }
+            String lemma = lemmaOf(buffer, length);
+            if (lemma != null) {
+                lemmaCount.addTo(lemma, 1);
+            }
+        });
+        return lemmaCount;
+    }
 
-        for (String word : words) {
-            // Убираем знаки препинания из слов
-            Matcher matcher = pattern.matcher(word);
-            word = matcher.replaceAll("");
+    // Получатель лемм с позицией исходного слова в тексте
+    public interface LemmaConsumer {
+        void accept(String lemma, int start, int end);
+    }
 
-            // Приводим слово к нижнему регистру
-            word = word.toLowerCase();
+    // Подсчёт лемм в тексте, где смешаны русские и английские слова:
+    // анализатор выбирается по алфавиту слова, служебные части речи отбрасываются
+    public static ObjectIntHashMap<String> countLemmas(CharSequence text) {
+        ObjectIntHashMap<String> lemmaCount = new ObjectIntHashMap<>();
+        forEachLemma(text, (lemma, start, end) -> lemmaCount.addTo(lemma, 1));
+        return lemmaCount;
+    }
 
-            // Пропускаем слова с апострофами в английском языке (например, it's, I'm)
-            if (language.equals("en") && word.contains("'")) {
-                continue;
+    // Обход всех значимых слов текста с их леммами и позициями
+    public static void forEachLemma(CharSequence text, LemmaConsumer consumer) {
+        TOKENIZERS.get().tokenize(text, (buffer, length, start, end, cyrillic) -> {
+            String lemma = lemmaOf(buffer, length);
+            if (lemma != null) {
+                consumer.accept(lemma, start, end);
             }
+        });
+    }
 
-            try {
-                // Получаем информацию о морфологии слова
-                List<String> wordBaseForms = luceneMorph.getMorphInfo(word);
-
-                // Проверяем, что слово не является служебной частью речи
-                if (wordBaseForms.stream().noneMatch(info -> info.contains("СОЮЗ") ||
-                        info.contains("МЕЖД") ||
-                        info.contains("ПРЕДЛ") ||
-                        info.contains("ЧАСТ") ||
-                        info.contains("CONJ") ||  // Для английского языка
-                        info.contains("PART"))) { // Для английского языка
-
-                    // Получаем лемму (основную форму слова)
-                    String lemma = luceneMorph.getNormalForms(word).get(0);
-
-                    // Добавляем лемму в HashMap с подсчетом количества
-                    lemmaCount.put(lemma, lemmaCount.getOrDefault(lemma, 0) + 1);
-                }
-            } catch (Exception e) {
-                // Логируем ошибку, если не удалось обработать слово
-                System.err.println("Ошибка при обработке слова: " + word);
-                e.printStackTrace();
+    // Лемма слова из буфера разборщика (уже в нижнем регистре)
+    private static String lemmaOf(char[] buffer, int length) {
+        CharSliceCache<String> cache = WORD_LEMMAS.get();
+        String lemma = cache.get(buffer, length);
+        if (lemma == null) {
+            lemma = morphology.lemmaOf(buffer, length);
+            if (lemma == null) {
+                lemma = NO_LEMMA;
             }
+            cache.put(buffer, length, lemma);
         }
-        return lemmaCount;
+        return lemma.isEmpty() ? null : lemma;
+    }
+
+    private static boolean isApostrophe(CharSequence text, int index) {
+        return index >= 0 && index < text.length() && (text.charAt(index) == '\'' || text.charAt(index) == '’');
+    }
+
+    // Лемма отдельного слова или null, если слово служебное или отсутствует в словаре
+    public static String lemmaOf(String word) {
+        return morphology.lemmaOf(word);
     }
 
     // Метод для удаления HTML-тегов
     public static String removeHtmlTags(String text) {
-        // Используем библиотеку Jsoup для очистки HTML
-        return Jsoup.parse(text).text();
+        // Потоковое извлечение текста без построения DOM
+        return HtmlTextExtractor.extract(text, null).getText();
     }
 
     // Метод для выбора морфологического анализатора в зависимости от языка
     public static LuceneMorphology getMorphology(String language) {
-        switch (language.toLowerCase()) {
-            case "ru":
-                return russianMorph;
-            case "en":
-                return englishMorph;
-            default:
-                throw new IllegalArgumentException("Неизвестный язык: " + language);
-        }
+        return morphology.getMorphology(language);
     }
 
     // Пример использования
@@ -115,7 +115,7 @@ public class TextProcessor {
 
         // Пример текста для обработки морфологии на русском языке
         String textRu = "Я люблю программировать и создавать приложения, и это интересно.";
-        HashMap<String, Integer> lemmaCountsRu = processText(textRu, "ru");
+        ObjectIntHashMap<String> lemmaCountsRu = processText(textRu, "ru");
         System.out.println("Леммы и их количество для русского текста: " + lemmaCountsRu);
 
         // Пример текста с HTML-тегами для английского языка
@@ -124,7 +124,7 @@ public class TextProcessor {
 
         // Пример текста для обработки морфологии на английском языке
         String textEn = "I love programming and creating applications, and it's interesting.";
-        HashMap<String, Integer> lemmaCountsEn = processText(textEn, "en");
+        ObjectIntHashMap<String> lemmaCountsEn = processText(textEn, "en");
         System.out.println("Леммы и их количество для английского текста: " + lemmaCountsEn);
     }
 }
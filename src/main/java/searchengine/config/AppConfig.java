@@ -2,11 +2,14 @@ package searchengine.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import searchengine.services.MorphologyService;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 @Configuration
+@EnableScheduling
 public class AppConfig {
 
     // Создаем бин ExecutorService
@@ -15,4 +18,10 @@ public class AppConfig {
         // Создаем пул потоков с заданным количеством потоков
         return Executors.newFixedThreadPool(4); // Используем 4 потока в пуле, можете настроить по вашему усмотрению
     }
-}
\ No newline at end of file
+
+    // Общий экземпляр морфологии: тот же, что используют статические утилиты
+    @Bean
+    public MorphologyService morphologyService() {
+        return MorphologyService.getInstance();
+    }
+}
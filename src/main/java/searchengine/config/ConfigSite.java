@@ -8,4 +8,6 @@ import lombok.Setter;
 public class ConfigSite {
     private String url;
     private String name;
+    // Допустимая частота запросов к сайту; если не задана, берётся crawler-settings.requests-per-second
+    private Double requestsPerSecond;
 }
@@ -0,0 +1,8 @@
+package searchengine.config;
+
+public enum ContentStorage {
+    // HTML хранится как есть в page.content
+    PLAIN,
+    // HTML сжимается в отдельную таблицу page_content, page.content остаётся пустым
+    COMPRESSED
+}
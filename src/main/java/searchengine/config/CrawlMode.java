@@ -0,0 +1,6 @@
+package searchengine.config;
+
+public enum CrawlMode {
+    FORK_JOIN,
+    VIRTUAL_THREADS
+}
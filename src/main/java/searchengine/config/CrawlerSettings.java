@@ -0,0 +1,74 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler-settings")
+public class CrawlerSettings {
+    // Максимальное число URL, ожидающих обработки в очереди одного сайта
+    private int frontierCapacity = 100_000;
+
+    // Журнал границы обхода на диске (каталог и период контрольных точек): прерванный
+    // обход сайта продолжается с места остановки
+    private boolean frontierJournal = true;
+    private String frontierDir = "data/frontier";
+    private long frontierCheckpointIntervalMs = 10_000;
+
+    // Движок обхода: задачи ForkJoin или виртуальные потоки Java 21
+    private CrawlMode mode = CrawlMode.FORK_JOIN;
+
+    // Ограничение одновременных запросов к одному хосту (режим виртуальных потоков)
+    private int maxConnectionsPerHost = 16;
+
+    // Частота запросов к одному хосту по умолчанию и допустимый всплеск (token bucket)
+    private double requestsPerSecond = 2.0;
+    private int burst = 1;
+
+    // Учитывать директиву Crawl-delay из robots.txt; большие значения ограничиваются maxCrawlDelayMs
+    private boolean respectCrawlDelay = true;
+    private long maxCrawlDelayMs = 30_000;
+
+    // Отложенная запись страниц: размер пакета, максимальная задержка пакета,
+    // ёмкость очереди (при заполнении обходчики ждут) и число потоков записи
+    private int pageBatchSize = 50;
+    private long pageFlushIntervalMs = 500;
+    private int pageQueueCapacity = 5_000;
+    private int pageWriterThreads = 2;
+
+    // Потоки стадии лемматизации и ёмкость её очереди пакетов
+    private int indexerThreads = Runtime.getRuntime().availableProcessors();
+    private int indexerQueueCapacity = 64;
+
+    // Период сброса накопленных частот лемм в таблицу lemma
+    private long lemmaFlushIntervalMs = 2_000;
+
+    // Хранение HTML страниц: как есть или сжатым со словарём сайта
+    private ContentStorage contentStorage = ContentStorage.PLAIN;
+    private int compressionLevel = 6;
+
+    // Наибольшее расстояние Хэмминга между SimHash почти-дубликатов (не больше 3); 0 — только точные дубликаты
+    private int nearDuplicateDistance = 3;
+
+    // Повторная индексация без удаления данных сайта: условные запросы, переиндексация
+    // только изменившихся страниц и удаление исчезнувших
+    private boolean incremental = false;
+
+    // Фоновое удаление старых поколений: страниц в диапазоне, наименьшая пауза между диапазонами
+    // и длина истории undo InnoDB, выше которой удаление ждёт (0 — не проверять)
+    private int purgeChunkSize = 500;
+    private long purgePauseMs = 50;
+    private long purgeMaxUndoHistory = 1_000_000;
+
+    // HTTP-клиент обхода: таймаут установки соединения, таймаут ответа и предел размера тела
+    // (и сжатого, и распакованного)
+    private long connectTimeoutMs = 10_000;
+    private long requestTimeoutMs = 30_000;
+    private int maxBodyBytes = 5 * 1024 * 1024;
+
+    private String userAgent = "Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6";
+}
@@ -0,0 +1,27 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    // Леммы, встречающиеся на большей доле страниц сайта, не участвуют в пересечении
+    private double maxLemmaShare = 0.8;
+
+    // На сайтах с меньшим числом страниц доля не показательна, отсечение не применяется
+    private int pruneMinPages = 50;
+
+    // Длина сниппета в символах
+    private int snippetLength = 240;
+
+    // Сколько подготовленных текстов страниц держать в памяти для сниппетов
+    private int snippetCacheSize = 2000;
+
+    // Предел памяти под кэш результатов поиска, байт; 0 отключает кэш
+    private long resultCacheBytes = 16L * 1024 * 1024;
+}
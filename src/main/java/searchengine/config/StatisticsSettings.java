@@ -0,0 +1,27 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistics-settings")
+public class StatisticsSettings {
+    // Период обновления снимка строк site (статус, время статуса, ошибка) в памяти
+    private long siteRefreshIntervalMs = 1_000;
+
+    // Период сверки счётчиков страниц и лемм с базой
+    private long reconcileIntervalMs = 60_000;
+
+    // Поток прогресса (SSE): не чаще одного события за интервал, пустой комментарий
+    // для проверки соединения при долгом затишье, время жизни подписки
+    private long streamIntervalMs = 1_000;
+    private long streamHeartbeatMs = 15_000;
+    private long streamTimeoutMs = 1_800_000;
+
+    // Сколько событий может ждать отправки одному подписчику; отставший сильнее отключается
+    private int streamBacklog = 16;
+}
@@ -4,12 +4,18 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import searchengine.dto.search.SearchResponse;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.services.IndexingService;
+import searchengine.services.SearchService;
 import searchengine.services.StatisticsService;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam ;
 import searchengine.services.PageIndexingService;
+import searchengine.services.ProgressBroadcaster;
+import searchengine.services.PurgeService;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -25,12 +31,20 @@ public class ApiController {
     private final IndexingService indexingService;
     private final ExecutorService executorService;
     private final PageIndexingService pageIndexingService;  // Исправленное имя переменной
+    private final SearchService searchService;
+    private final PurgeService purgeService;
+    private final ProgressBroadcaster progressBroadcaster;
 
-    public ApiController(StatisticsService statisticsService, PageIndexingService pageIndexingService, IndexingService indexingService, ExecutorService executorService) {
+    public ApiController(StatisticsService statisticsService, PageIndexingService pageIndexingService, IndexingService indexingService,
+                         ExecutorService executorService, SearchService searchService, PurgeService purgeService,
+                         ProgressBroadcaster progressBroadcaster) {
         this.statisticsService = statisticsService;
         this.indexingService = indexingService;
         this.executorService = executorService;
         this.pageIndexingService = pageIndexingService;  // Конструктор правильно инициализирует переменную
+        this.searchService = searchService;
+        this.purgeService = purgeService;
+        this.progressBroadcaster = progressBroadcaster;
     }
 
 
@@ -40,6 +54,13 @@ public class ApiController {
         return ResponseEntity.ok(statisticsService.getStatistics());
     }
 
+    // Поток прогресса индексации (Server-Sent Events): "snapshot" со всеми сайтами,
+    // затем "progress" только с изменившимися сайтами, не чаще раза в интервал рассылки
+    @GetMapping(value = "/statistics/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter statisticsStream() {
+        return progressBroadcaster.subscribe();
+    }
+
     @GetMapping("/startIndexing")
     public ResponseEntity<Map<String, Object>> startIndexing() {
         if (indexingService.isIndexingInProgress()) {
@@ -73,9 +94,18 @@ public class ApiController {
         return ResponseEntity.ok(successResponse);
     }
 
+    // Ход фонового удаления старых поколений страниц
+    @GetMapping("/purgeStatus")
+    public ResponseEntity<Map<String, Object>> purgeStatus() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("result", true);
+        response.put("tasks", purgeService.progress());
+        return ResponseEntity.ok(response);
+    }
+
     @PostMapping(value = "/indexPage", consumes = "application/x-www-form-urlencoded")
     public ResponseEntity<Map<String, Object>> indexPage(@RequestParam String url,
-                                                         @RequestParam(required = false, defaultValue = "3") int depth) { // depth с дефолтным значением 3
+                                                         @RequestParam(required = false, defaultValue = "1") int depth) { // depth 1 — только сама страница
         Map<String, Object> response = new HashMap<>();
 
         // Максимальная допустимая глубина
@@ -103,7 +133,11 @@ public class ApiController {
         }
 
         try {
-            pageIndexingService.indexSite(url, depth); // передаем глубину в метод
+            if (depth <= 1) {
+                pageIndexingService.indexPage(url); // быстрое обновление одной страницы
+            } else {
+                pageIndexingService.indexSite(url, depth); // передаем глубину в метод
+            }
             response.put("result", true);
             logger.info("Страница успешно проиндексирована: {}", url);
             return ResponseEntity.ok(response);
@@ -117,5 +151,24 @@ public class ApiController {
         }
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<?> search(@RequestParam(required = false) String query,
+                                    @RequestParam(required = false) String site,
+                                    @RequestParam(required = false, defaultValue = "0") int offset,
+                                    @RequestParam(required = false, defaultValue = "20") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        if (query == null || query.isBlank()) {
+            return pageIndexingService.createErrorResponse(response, "Задан пустой поисковый запрос", HttpStatus.BAD_REQUEST);
+        }
+        if (offset < 0 || limit <= 0) {
+            return pageIndexingService.createErrorResponse(response, "Некорректные параметры offset/limit", HttpStatus.BAD_REQUEST);
+        }
 
+        try {
+            SearchResponse result = searchService.search(query, site, offset, limit);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return pageIndexingService.createErrorResponse(response, e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
 }
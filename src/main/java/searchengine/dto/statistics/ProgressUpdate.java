@@ -0,0 +1,12 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ProgressUpdate {
+    private boolean indexing;
+    // Только сайты, у которых что-то изменилось с прошлой рассылки (в первом событии — все)
+    private List<SiteProgress> sites;
+}
@@ -0,0 +1,22 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class SiteProgress {
+    private String url;
+    private String name;
+    private String status;
+    private long statusTime;
+    private String error;
+    private long pages;
+    private long lemmas;
+    // Загружено страниц, с ошибкой и проиндексировано с запуска приложения
+    private long fetched;
+    private long failed;
+    private long indexed;
+    // URL в очереди обхода
+    private int queueDepth;
+    // Страниц в секунду за последний интервал рассылки
+    private double fetchRate;
+}
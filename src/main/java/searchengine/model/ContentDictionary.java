@@ -0,0 +1,25 @@
+package searchengine.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * Общий словарь сжатия страниц сайта: начало первой сохранённой страницы,
+ * в котором обычно собрана повторяющаяся разметка шаблона.
+ */
+@Entity
+@Table(name = "content_dictionary")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContentDictionary {
+
+    @Id
+    @Column(name = "site_id", nullable = false)
+    private Integer siteId;
+
+    @Column(columnDefinition = "BLOB", nullable = false)
+    private byte[] dictionary;
+}
@@ -6,7 +6,7 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
 @Entity
-@Table(name = "'index'")
+@Table(name = "`index`")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -25,6 +25,6 @@ public class Index {
     @JoinColumn(name = "lemma_id", nullable = false)
     private Lemma lemma;
 
-    @Column(name = "'rank'", nullable = false)
+    @Column(name = "`rank`", nullable = false)
     private Float rank;
 }
\ No newline at end of file
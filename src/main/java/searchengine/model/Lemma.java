@@ -7,7 +7,11 @@ import lombok.AllArgsConstructor;
 import jakarta.persistence.Index;  // For Javax Persistence
 
 @Entity
-@Table(name = "lemma", indexes = @Index(name = "idx_lemma", columnList = "lemma"))
+@Table(
+        name = "lemma",
+        indexes = @Index(name = "idx_lemma", columnList = "lemma"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_lemma_site", columnNames = {"site_id", "lemma"})
+)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,7 +26,9 @@ public class Lemma {
     @JoinColumn(name = "site_id", nullable = false)
     private Site site;
 
-    @Column(name = "lemma", nullable = false, length = 500)
+    // Бинарное сравнение: при регистронезависимой сортировке "все" и "всё" считались бы одной леммой
+    @Column(name = "lemma", nullable = false, length = 500,
+            columnDefinition = "VARCHAR(500) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin")
     private String lemma;
 
     @Column(name = "frequency", nullable = false)
@@ -4,13 +4,13 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import searchengine.util.HtmlTextExtractor;
 
 @Entity
 @Table(
         name = "page",
-        indexes = {@jakarta.persistence.Index(name = "idx_path", columnList = "path")}
+        indexes = {@jakarta.persistence.Index(name = "idx_path", columnList = "path"),
+                @jakarta.persistence.Index(name = "idx_page_site_generation", columnList = "site_id, generation")}
 )
 @Data
 @NoArgsConstructor
@@ -32,12 +32,31 @@ public class Page {
     @Column(nullable = false)
     private int code;
 
+    // Поколение сайта, к которому относится страница (Site.activeGeneration или buildingGeneration)
+    @Column(nullable = false)
+    private int generation;
+
     @Column(columnDefinition = "MEDIUMTEXT", nullable = false)
     private String content;
 
     @Column(length = 500)
     private String contentType; // Столбец для хранения типа содержимого (например, "image/png")
 
+    // Отпечаток байтов ответа (см. ContentFingerprint)
+    @Column(name = "content_hash")
+    private Long contentHash;
+
+    // Путь канонической страницы сайта с тем же или почти тем же содержимым; у псевдонима контент не хранится
+    @Column(name = "alias_of", length = 500)
+    private String aliasOf;
+
+    // Валидаторы ответа для условных запросов при повторном обходе (If-None-Match / If-Modified-Since)
+    @Column(length = 255)
+    private String etag;
+
+    @Column(name = "last_modified", length = 64)
+    private String lastModified;
+
     // Дополнительное поле для хранения заголовка страницы
     @Transient
     private String title;
@@ -46,14 +65,31 @@ public class Page {
     @Transient
     private String text;
 
+    // Вызывается, когда страница записана и (если она индексируется) проиндексирована
+    @Transient
+    private Runnable onIndexed;
 
 
-    // Метод для извлечения текста из HTML контента
+
+    // Заголовок страницы; если обходчик его не заполнил, извлекается из HTML вместе с текстом
+    public String getTitle() {
+        if (title == null && content != null) {
+            extractText();
+        }
+        return title;
+    }
+
+    // Метод для извлечения текста из HTML контента (один проход, без построения DOM)
     public String getText() {
-        if (content != null) {
-            Document doc = Jsoup.parse(content);
-            return doc.text(); // Извлекаем текст из HTML (без тегов)
+        if (text == null && content != null) {
+            extractText();
         }
-        return null;
+        return text;
+    }
+
+    private void extractText() {
+        HtmlTextExtractor.Result extracted = HtmlTextExtractor.extract(content, null);
+        title = extracted.getTitle();
+        text = extracted.getText();
     }
 }
@@ -0,0 +1,25 @@
+package searchengine.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * Сжатый HTML страницы (см. searchengine.services.PageContentStore).
+ * Вынесен из таблицы page, чтобы выборки метаданных страниц его не читали.
+ */
+@Entity
+@Table(name = "page_content")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageContent {
+
+    @Id
+    @Column(name = "page_id", nullable = false)
+    private Integer pageId;
+
+    @Column(columnDefinition = "MEDIUMBLOB", nullable = false)
+    private byte[] data;
+}
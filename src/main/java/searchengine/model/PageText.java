@@ -0,0 +1,31 @@
+package searchengine.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * Подготовленные при индексации данные для сниппетов: заголовок, видимый текст
+ * страницы и таблица позиций слов по леммам (см. searchengine.util.TokenOffsets).
+ */
+@Entity
+@Table(name = "page_text")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageText {
+
+    @Id
+    @Column(name = "page_id", nullable = false)
+    private Integer pageId;
+
+    @Column(length = 1000)
+    private String title;
+
+    @Column(columnDefinition = "MEDIUMTEXT", nullable = false)
+    private String text;
+
+    @Column(name = "token_offsets", columnDefinition = "MEDIUMBLOB")
+    private byte[] tokenOffsets;
+}
@@ -38,6 +38,14 @@ public class Site {
     @Column(length = 500, nullable = false)
     private String name;
 
+    // Поколение страниц, по которому идёт поиск, и поколение, которое сейчас строится
+    // полной переиндексацией (null, если не строится); см. SiteGenerations
+    @Column(name = "active_generation", nullable = false)
+    private int activeGeneration;
+
+    @Column(name = "building_generation")
+    private Integer buildingGeneration;
+
     @OneToMany(mappedBy = "site", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Page> pages = new ArrayList<>();
 
@@ -5,4 +5,3 @@ import searchengine.model.Lemma;
 
 public interface LemmaRepository extends JpaRepository<Lemma, Long> {
 }
-
@@ -0,0 +1,28 @@
+package searchengine.services;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import searchengine.model.Site;
+import searchengine.repository.PageRepository;
+
+/**
+ * Всё, что нужно задачам обхода одного сайта: сайт, его очередь URL и общие сервисы.
+ */
+@Getter
+@RequiredArgsConstructor
+public class CrawlContext {
+    private final Site site;
+    private final CrawlFrontier frontier;
+    private final PageRepository pageRepository;
+    private final IndexingService indexingService;
+    private final PolitenessScheduler politenessScheduler;
+    private final PageBatchWriter pageBatchWriter;
+    private final PageFetcher pageFetcher;
+    private final DuplicateDetector duplicateDetector;
+    // Поколение, в которое пишутся страницы обхода
+    private final int generation;
+    // Страницы прошлого обхода; null при полной переиндексации
+    private final KnownPages knownPages;
+    private final PageRevisions pageRevisions;
+    private final SiteStatistics siteStatistics;
+}
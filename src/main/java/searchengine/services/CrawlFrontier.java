@@ -0,0 +1,250 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import searchengine.util.StripedLongHashSet;
+import searchengine.util.UrlFingerprint;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Граница обхода (frontier) одного сайта: множество уже встреченных URL
+ * в виде 64-битных отпечатков и ограниченная очередь URL, ожидающих загрузки.
+ * Все задачи обхода сайта работают только через этот компонент.
+ * С журналом (FrontierJournal) граница переживает остановку и перезапуск: URL,
+ * взятые из очереди, считаются незавершёнными, пока задача не сообщит, что
+ * страница записана и проиндексирована; незавершённые URL при возобновлении
+ * загружаются снова.
+ */
+public class CrawlFrontier {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlFrontier.class);
+
+    private final String siteUrl;
+    private final StripedLongHashSet seen;
+    private final StripedLongHashSet storedPaths = new StripedLongHashSet(16, 1024);
+    // Пути страниц, сохранённых до конца (записаны и проиндексированы)
+    private final StripedLongHashSet confirmedPaths;
+    private final LinkedBlockingQueue<String> pending = new LinkedBlockingQueue<>();
+    // Свободные места в очереди; место занимается до того, как URL помечается встреченным
+    private final Semaphore freeSlots;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final LongAdder rejected = new LongAdder();
+    // null — обход без журнала
+    private final FrontierJournal journal;
+    private final boolean resumed;
+    // Изменения состояния идут под общей блокировкой, снимок журнала — под исключительной
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    public CrawlFrontier(String siteUrl, int pendingCapacity) {
+        this(siteUrl, pendingCapacity, null, new FrontierJournal.State());
+    }
+
+    CrawlFrontier(String siteUrl, int pendingCapacity, FrontierJournal journal, FrontierJournal.State state) {
+        this.siteUrl = siteUrl;
+        this.journal = journal;
+        this.resumed = state.resumed;
+        this.seen = state.seen;
+        this.confirmedPaths = state.confirmed;
+        state.confirmed.forEach(storedPaths::add);
+        this.pending.addAll(state.pending);
+        this.freeSlots = new Semaphore(Math.max(0, pendingCapacity - state.pending.size()));
+    }
+
+    static long fingerprint(String url) {
+        String normalized = UrlFingerprint.normalize(url);
+        return UrlFingerprint.hash(normalized == null ? url : normalized);
+    }
+
+    // Ставит URL в очередь, если он ещё не встречался и в очереди есть место.
+    // При переполнении URL не помечается посещённым и может быть найден повторно позже.
+    public boolean offer(String url) {
+        String normalized = UrlFingerprint.normalize(url);
+        if (normalized == null || normalized.isEmpty()) {
+            return false;
+        }
+        long fingerprint = UrlFingerprint.hash(normalized);
+        if (seen.contains(fingerprint)) {
+            return false;
+        }
+        if (!freeSlots.tryAcquire()) {
+            rejected.increment();
+            logger.debug("Очередь обхода сайта {} переполнена, URL отложен: {}", siteUrl, url);
+            return false;
+        }
+        Lock shared = snapshotLock.readLock();
+        shared.lock();
+        try {
+            if (!seen.add(fingerprint)) {
+                freeSlots.release();
+                return false;
+            }
+            // Место уже занято, поэтому постановка в очередь не может сорваться после записи в журнал
+            if (journal != null) {
+                journal.enqueued(url);
+            }
+            pending.add(url);
+            return true;
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    // Помечает URL встреченным, не ставя его в очередь (ссылки, которые не загружаются)
+    public boolean markSeen(String url) {
+        String normalized = UrlFingerprint.normalize(url);
+        return normalized != null && seen.add(UrlFingerprint.hash(normalized));
+    }
+
+    // Резервирует путь страницы для сохранения: разные URL (например, с параметрами запроса)
+    // могут давать один и тот же path, а в таблице page он должен встречаться один раз
+    public boolean claimPath(String path) {
+        return storedPaths.add(UrlFingerprint.hash(path));
+    }
+
+    // Подтверждает путь страницы, которая уже есть в базе (не изменилась с прошлого обхода,
+    // ссылки tel: и javascript:)
+    public void confirmPath(String path) {
+        Lock shared = snapshotLock.readLock();
+        shared.lock();
+        try {
+            long fingerprint = UrlFingerprint.hash(path);
+            if (confirmedPaths.add(fingerprint) && journal != null) {
+                journal.confirmed(fingerprint);
+            }
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    public boolean isPathConfirmed(String path) {
+        return confirmedPaths.contains(UrlFingerprint.hash(path));
+    }
+
+    // URL обработан до конца: ссылки страницы в очереди, страница (path, если сохранялась)
+    // записана и проиндексирована
+    public void complete(String url, String path) {
+        Lock shared = snapshotLock.readLock();
+        shared.lock();
+        try {
+            inFlight.remove(url);
+            if (journal == null) {
+                return;
+            }
+            if (path != null) {
+                long fingerprint = UrlFingerprint.hash(path);
+                if (confirmedPaths.add(fingerprint)) {
+                    journal.confirmed(fingerprint);
+                }
+            }
+            journal.done(url);
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    public String poll() {
+        Lock shared = snapshotLock.readLock();
+        shared.lock();
+        try {
+            return take(pending.poll());
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Lock shared = snapshotLock.readLock();
+        shared.lock();
+        try {
+            return take(pending.poll(timeout, unit));
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    private String take(String url) {
+        if (url == null) {
+            return null;
+        }
+        freeSlots.release();
+        if (journal != null) {
+            inFlight.add(url);
+        }
+        return url;
+    }
+
+    // Контрольная точка журнала: дописанное сбрасывается на диск, разросшийся журнал
+    // заменяется снимком (обход на время снимка приостанавливается)
+    public void checkpoint() {
+        if (journal == null) {
+            return;
+        }
+        if (!journal.needsCompaction()) {
+            journal.flush();
+            return;
+        }
+        Lock exclusive = snapshotLock.writeLock();
+        exclusive.lock();
+        try {
+            long started = System.currentTimeMillis();
+            journal.compact(this::writeSnapshot);
+            logger.debug("Снимок журнала обхода сайта {}: {} URL, в очереди {}, за {} ms",
+                    siteUrl, seen.size(), pending.size() + inFlight.size(), System.currentTimeMillis() - started);
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    void writeSnapshot(FrontierJournal.Records records) {
+        seen.forEach(records::seen);
+        confirmedPaths.forEach(records::confirmed);
+        for (String url : inFlight) {
+            records.enqueued(url);
+        }
+        for (String url : pending) {
+            records.enqueued(url);
+        }
+    }
+
+    FrontierJournal getJournal() {
+        return journal;
+    }
+
+    // Обход продолжает прерванный: стартовый URL уже обработан или стоит в очереди
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public String getSiteUrl() {
+        return siteUrl;
+    }
+
+    public int pendingSize() {
+        return pending.size();
+    }
+
+    public int seenCount() {
+        return seen.size();
+    }
+
+    public long contendedLocks() {
+        return seen.contendedLocks();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public void logStats() {
+        logger.info("Обход сайта {}: встречено URL {}, в очереди {}, конфликтов блокировок {}, отклонено {}",
+                siteUrl, seenCount(), pendingSize(), contendedLocks(), rejectedCount());
+    }
+}
@@ -0,0 +1,41 @@
+package searchengine.services;
+
+import searchengine.util.ContentFingerprint;
+import searchengine.util.SimHashIndex;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Распознавание дубликатов страниц одного сайта за время обхода.
+ * Первая страница с данным содержимым становится канонической, остальные
+ * записываются как её псевдонимы (page.alias_of) и не индексируются.
+ */
+public class DuplicateDetector {
+
+    private final ConcurrentHashMap<Long, String> exact = new ConcurrentHashMap<>();
+    private final SimHashIndex<String> near;
+    private final boolean nearEnabled;
+
+    public DuplicateDetector(int nearDuplicateDistance) {
+        this.nearEnabled = nearDuplicateDistance > 0;
+        this.near = new SimHashIndex<>(nearDuplicateDistance);
+    }
+
+    // Путь страницы с тем же содержимым или null, если содержимое встретилось впервые
+    public String claimExact(long contentHash, String path) {
+        return exact.putIfAbsent(contentHash, path);
+    }
+
+    // Страница оказалась почти-дубликатом: её точный отпечаток ведёт сразу к канонической
+    public void redirect(long contentHash, String canonicalPath) {
+        exact.put(contentHash, canonicalPath);
+    }
+
+    // Путь почти совпадающей страницы или null
+    public String claimNear(long simHash, String path) {
+        if (!nearEnabled || simHash == ContentFingerprint.NO_SIMHASH) {
+            return null;
+        }
+        return near.findOrAdd(simHash, path);
+    }
+}
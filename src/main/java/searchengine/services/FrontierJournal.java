@@ -0,0 +1,361 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import searchengine.util.StripedLongHashSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Журнал границы обхода одного сайта на диске: файл только дописывается записями
+ * «URL поставлен в очередь», «URL обработан» и «путь страницы сохранён». Чтобы файл
+ * не рос вместе с сайтом, при контрольной точке он заменяется снимком: отпечатки
+ * встреченных URL, подтверждённые пути и ещё не обработанные URL. Повреждённый
+ * хвост (обрыв записи при аварии) при чтении отбрасывается.
+ */
+public class FrontierJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrontierJournal.class);
+
+    private static final int MAGIC = 0x46524e54;
+    private static final int VERSION = 1;
+    private static final byte SEEN = 'S';
+    private static final byte ENQUEUED = 'Q';
+    private static final byte DONE = 'D';
+    private static final byte CONFIRMED = 'C';
+    // Файл переписывается снимком, когда дописанное с прошлого снимка больше снимка и этого порога
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+    private final Path file;
+    private final Header header;
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private long snapshotBytes;
+    private long appendedBytes;
+    private boolean closed;
+
+    private FrontierJournal(Path file, Header header) {
+        this.file = file;
+        this.header = header;
+    }
+
+    // Новый журнал; существующий файл заменяется
+    static FrontierJournal create(Path file, Header header) throws IOException {
+        FrontierJournal journal = new FrontierJournal(file, header);
+        journal.rewrite(records -> {
+        });
+        return journal;
+    }
+
+    // Продолжает существующий журнал: сразу переписывает его снимком восстановленного состояния,
+    // заодно отбрасывая повреждённый хвост
+    static FrontierJournal reopen(Path file, Header header, Consumer<Records> snapshot) throws IOException {
+        FrontierJournal journal = new FrontierJournal(file, header);
+        journal.rewrite(snapshot);
+        return journal;
+    }
+
+    // Заголовок журнала или null, если файла нет или он не читается
+    static Header readHeader(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return readHeader(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Восстанавливает состояние границы обхода из журнала
+    static State replay(Path file) throws IOException {
+        State state = new State();
+        state.resumed = true;
+        long records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (readHeader(in) == null) {
+                throw new IOException("Неверный заголовок журнала " + file);
+            }
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                switch (type) {
+                    case SEEN -> state.seen.add(in.readLong());
+                    case CONFIRMED -> state.confirmed.add(in.readLong());
+                    case ENQUEUED -> {
+                        String url = readString(in);
+                        state.seen.add(CrawlFrontier.fingerprint(url));
+                        state.pending.add(url);
+                    }
+                    case DONE -> {
+                        String url = readString(in);
+                        state.seen.add(CrawlFrontier.fingerprint(url));
+                        state.pending.remove(url);
+                    }
+                    default -> throw new EOFException("неизвестная запись " + type);
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            logger.warn("Журнал {} оборван после {} записей, хвост отброшен", file, records);
+        }
+        return state;
+    }
+
+    Header getHeader() {
+        return header;
+    }
+
+    void enqueued(String url) {
+        append(ENQUEUED, url, 0);
+    }
+
+    void done(String url) {
+        append(DONE, url, 0);
+    }
+
+    void confirmed(long pathFingerprint) {
+        append(CONFIRMED, null, pathFingerprint);
+    }
+
+    // Пора ли заменить журнал снимком
+    boolean needsCompaction() {
+        lock.lock();
+        try {
+            return !closed && appendedBytes > Math.max(MIN_COMPACT_BYTES, snapshotBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Контрольная точка: дописанное сбрасывается на диск
+    void flush() {
+        lock.lock();
+        try {
+            if (!closed) {
+                out.flush();
+                fileOut.getChannel().force(false);
+            }
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Контрольная точка со снимком; вызывающий код не даёт состоянию меняться во время записи
+    void compact(Consumer<Records> snapshot) {
+        lock.lock();
+        try {
+            if (!closed) {
+                out.close();
+                rewrite(snapshot);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            fail(e instanceof UncheckedIOException unchecked ? unchecked.getCause() : (IOException) e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            if (!closed) {
+                out.flush();
+                fileOut.getChannel().force(false);
+                out.close();
+                closed = true;
+            }
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void delete() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Не удалось удалить журнал обхода {}: {}", file, e.getMessage());
+        }
+    }
+
+    // Снимок пишется во временный файл и атомарно подменяет журнал; дальше журнал дописывается
+    private void rewrite(Consumer<Records> snapshot) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream tempOut = new FileOutputStream(temp.toFile());
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(tempOut, 1 << 16))) {
+            writeHeader(data, header);
+            snapshot.accept(new Records() {
+                @Override
+                public void seen(long fingerprint) {
+                    write(() -> {
+                        data.writeByte(SEEN);
+                        data.writeLong(fingerprint);
+                    });
+                }
+
+                @Override
+                public void enqueued(String url) {
+                    write(() -> {
+                        data.writeByte(ENQUEUED);
+                        writeString(data, url);
+                    });
+                }
+
+                @Override
+                public void confirmed(long pathFingerprint) {
+                    write(() -> {
+                        data.writeByte(CONFIRMED);
+                        data.writeLong(pathFingerprint);
+                    });
+                }
+            });
+            data.flush();
+            tempOut.getChannel().force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshotBytes = Files.size(file);
+        appendedBytes = 0;
+        fileOut = new FileOutputStream(file.toFile(), true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+    }
+
+    private void append(byte type, String url, long value) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            int before = out.size();
+            out.writeByte(type);
+            if (url != null) {
+                writeString(out, url);
+            } else {
+                out.writeLong(value);
+            }
+            appendedBytes += out.size() - before;
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ошибка записи не останавливает обход: журнал отключается, а при следующем
+    // запуске обход сайта начнётся заново
+    private void fail(IOException e) {
+        closed = true;
+        logger.error("Журнал обхода {} отключён: {}", file, e.getMessage());
+        try {
+            if (out != null) {
+                out.close();
+            }
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // файл уже недоступен
+        }
+    }
+
+    private static void write(IoAction action) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Header readHeader(DataInputStream in) throws IOException {
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            return new Header(in.readInt(), in.readInt(), in.readBoolean());
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, Header header) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(header.siteId);
+        out.writeInt(header.generation);
+        out.writeBoolean(header.incremental);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > 1 << 20) {
+            throw new EOFException("неверная длина строки " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    // Записи снимка журнала
+    interface Records {
+        void seen(long fingerprint);
+
+        void enqueued(String url);
+
+        void confirmed(long pathFingerprint);
+    }
+
+    // Чей это журнал: сайт, поколение страниц и режим обхода
+    static final class Header {
+        private final int siteId;
+        private final int generation;
+        private final boolean incremental;
+
+        Header(int siteId, int generation, boolean incremental) {
+            this.siteId = siteId;
+            this.generation = generation;
+            this.incremental = incremental;
+        }
+
+        boolean matches(int siteId, int generation, boolean incremental) {
+            return this.siteId == siteId && this.generation == generation && this.incremental == incremental;
+        }
+    }
+
+    // Состояние границы обхода, восстановленное из журнала (или пустое для нового обхода)
+    static final class State {
+        final StripedLongHashSet seen = new StripedLongHashSet();
+        final StripedLongHashSet confirmed = new StripedLongHashSet(16, 1024);
+        final LinkedHashSet<String> pending = new LinkedHashSet<>();
+        boolean resumed;
+    }
+}
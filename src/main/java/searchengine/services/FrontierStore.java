@@ -0,0 +1,129 @@
+package searchengine.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Site;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Журналы границ обхода сайтов (по файлу на сайт) и их периодические контрольные точки.
+ * Журнал остаётся на диске, если обход остановлен или приложение завершилось посреди
+ * обхода; следующий обход того же поколения сайта продолжает его, загружая только
+ * то, что ещё не было обработано. После завершённого обхода журнал удаляется.
+ */
+@Component
+public class FrontierStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrontierStore.class);
+
+    private final CrawlerSettings crawlerSettings;
+    private final Path directory;
+    private final ConcurrentHashMap<CrawlFrontier, ScheduledFuture<?>> open = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService checkpoints = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "frontier-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public FrontierStore(CrawlerSettings crawlerSettings) {
+        this.crawlerSettings = crawlerSettings;
+        this.directory = Paths.get(crawlerSettings.getFrontierDir());
+    }
+
+    // Последние записи открытых журналов сбрасываются на диск, сами журналы остаются для продолжения
+    @PreDestroy
+    public void shutdown() {
+        checkpoints.shutdownNow();
+        for (CrawlFrontier frontier : open.keySet()) {
+            frontier.getJournal().close();
+        }
+        open.clear();
+    }
+
+    // Есть ли журнал прерванного обхода этого поколения сайта
+    public boolean canResume(int siteId, int generation, boolean incremental) {
+        if (!crawlerSettings.isFrontierJournal()) {
+            return false;
+        }
+        FrontierJournal.Header header = FrontierJournal.readHeader(fileOf(siteId));
+        return header != null && header.matches(siteId, generation, incremental);
+    }
+
+    // Граница обхода сайта: восстановленная из журнала прерванного обхода того же поколения
+    // или новая; журнал другого поколения удаляется
+    public CrawlFrontier open(Site site, int generation, boolean incremental) {
+        int capacity = crawlerSettings.getFrontierCapacity();
+        if (!crawlerSettings.isFrontierJournal()) {
+            return new CrawlFrontier(site.getUrl(), capacity);
+        }
+        Path file = fileOf(site.getId());
+        FrontierJournal.Header header = new FrontierJournal.Header(site.getId(), generation, incremental);
+        CrawlFrontier frontier;
+        try {
+            Files.createDirectories(directory);
+            if (canResume(site.getId(), generation, incremental)) {
+                FrontierJournal.State state = FrontierJournal.replay(file);
+                FrontierJournal journal = FrontierJournal.reopen(file, header, records -> {
+                    state.seen.forEach(records::seen);
+                    state.confirmed.forEach(records::confirmed);
+                    state.pending.forEach(records::enqueued);
+                });
+                frontier = new CrawlFrontier(site.getUrl(), capacity, journal, state);
+                logger.info("Обход сайта {} продолжается с места остановки: встречено URL {}, сохранено страниц {}, " +
+                        "в очереди {}", site.getUrl(), state.seen.size(), state.confirmed.size(), state.pending.size());
+            } else {
+                FrontierJournal journal = FrontierJournal.create(file, header);
+                frontier = new CrawlFrontier(site.getUrl(), capacity, journal, new FrontierJournal.State());
+            }
+        } catch (IOException e) {
+            logger.error("Журнал обхода сайта {} недоступен, обход идёт без него: {}", site.getUrl(), e.getMessage());
+            return new CrawlFrontier(site.getUrl(), capacity);
+        }
+        long interval = Math.max(100, crawlerSettings.getFrontierCheckpointIntervalMs());
+        open.put(frontier, checkpoints.scheduleWithFixedDelay(() -> checkpoint(frontier), interval, interval,
+                TimeUnit.MILLISECONDS));
+        return frontier;
+    }
+
+    // Закрывает журнал обхода; keep = false — обход завершён и продолжать его не нужно
+    public void close(CrawlFrontier frontier, boolean keep) {
+        FrontierJournal journal = frontier.getJournal();
+        if (journal == null) {
+            return;
+        }
+        ScheduledFuture<?> checkpoint = open.remove(frontier);
+        if (checkpoint != null) {
+            checkpoint.cancel(false);
+        }
+        if (keep) {
+            frontier.checkpoint();
+            journal.close();
+        } else {
+            journal.delete();
+        }
+    }
+
+    private void checkpoint(CrawlFrontier frontier) {
+        try {
+            frontier.checkpoint();
+        } catch (RuntimeException e) {
+            logger.error("Ошибка контрольной точки обхода сайта {}: {}", frontier.getSiteUrl(), e.getMessage());
+        }
+    }
+
+    private Path fileOf(int siteId) {
+        return directory.resolve("site-" + siteId + ".journal");
+    }
+}
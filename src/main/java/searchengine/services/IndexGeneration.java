@@ -0,0 +1,26 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчики поколений индекса по сайтам. Поколение сайта увеличивается
+ * при каждой фиксации новых страниц и при удалении данных сайта; по нему
+ * кэш результатов поиска узнаёт, что запись устарела.
+ */
+@Component
+public class IndexGeneration {
+
+    private final ConcurrentHashMap<Integer, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public long current(int siteId) {
+        AtomicLong generation = generations.get(siteId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    public void bump(int siteId) {
+        generations.computeIfAbsent(siteId, id -> new AtomicLong()).incrementAndGet();
+    }
+}
@@ -4,6 +4,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import searchengine.config.CrawlMode;
+import searchengine.config.CrawlerSettings;
 import searchengine.config.SitesList;
 import searchengine.model.IndexingStatus;
 import searchengine.repository.PageRepository;
@@ -23,21 +25,46 @@ public class IndexingService {
     private final SitesList sitesList;
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-
+    private final CrawlerSettings crawlerSettings;
+    private final VirtualThreadCrawlEngine virtualThreadCrawlEngine;
+    private final PolitenessScheduler politenessScheduler;
+    private final PageBatchWriter pageBatchWriter;
+    private final PageIndexer pageIndexer;
+    private final LemmaDictionary lemmaDictionary;
+    private final PageRevisions pageRevisions;
+    private final SiteGenerations siteGenerations;
+    private final PageFetcher pageFetcher;
+    private final FrontierStore frontierStore;
+    private final SiteStatistics siteStatistics;
 
     private volatile boolean indexingInProgress = false;
     private ExecutorService executorService;
     private ForkJoinPool forkJoinPool;
 
-    public IndexingService(SitesList sitesList, SiteRepository siteRepository,  PageRepository pageRepository ) {
+    public IndexingService(SitesList sitesList, SiteRepository siteRepository,  PageRepository pageRepository,
+                           CrawlerSettings crawlerSettings, VirtualThreadCrawlEngine virtualThreadCrawlEngine,
+                           PolitenessScheduler politenessScheduler, PageBatchWriter pageBatchWriter,
+                           PageIndexer pageIndexer, LemmaDictionary lemmaDictionary,
+                           PageRevisions pageRevisions, SiteGenerations siteGenerations, PageFetcher pageFetcher,
+                           FrontierStore frontierStore, SiteStatistics siteStatistics) {
         this.sitesList = sitesList;
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
-
-
+        this.crawlerSettings = crawlerSettings;
+        this.virtualThreadCrawlEngine = virtualThreadCrawlEngine;
+        this.politenessScheduler = politenessScheduler;
+        this.pageBatchWriter = pageBatchWriter;
+        this.pageIndexer = pageIndexer;
+        this.lemmaDictionary = lemmaDictionary;
+        this.pageRevisions = pageRevisions;
+        this.siteGenerations = siteGenerations;
+        this.pageFetcher = pageFetcher;
+        this.frontierStore = frontierStore;
+        this.siteStatistics = siteStatistics;
     }
 
-    public synchronized boolean isIndexingInProgress() {
+    // Поле volatile: чтение не ждёт запуска или остановки индексации, занимающих монитор
+    public boolean isIndexingInProgress() {
         return indexingInProgress;
     }
 
@@ -77,6 +104,7 @@ public class IndexingService {
         if (forkJoinPool != null) {
             forkJoinPool.shutdownNow();
         }
+        virtualThreadCrawlEngine.stopAll();
 
         updateSitesStatusToFailed("Индексация остановлена пользователем");
     }
@@ -95,18 +123,54 @@ public class IndexingService {
                 executorService.submit(() -> {
                     logger.info("Индексация сайта: {} ({})", site.getName(), site.getUrl());
                     try {
-                        deleteSiteData(site.getUrl());
-                        searchengine.model.Site newSite = new searchengine.model.Site();
+                        searchengine.model.Site newSite = siteRepository.findByUrl(site.getUrl());
+                        boolean incremental = newSite != null && crawlerSettings.isIncremental();
+                        if (newSite == null) {
+                            newSite = new searchengine.model.Site();
+                            newSite.setUrl(site.getUrl());
+                        }
                         newSite.setName(site.getName());
-                        newSite.setUrl(site.getUrl());
+                        newSite.setLastError(null);
                         newSite.setStatus(IndexingStatus.INDEXING);
                         newSite.setStatusTime(LocalDateTime.now());
                         siteRepository.save(newSite);
-                        crawlAndIndexPages(newSite, site.getUrl());
-                        if (indexingInProgress) {
-                            updateSiteStatusToIndexed(newSite);
+                        // Полная переиндексация строит новое поколение страниц рядом с текущим, и поиск по сайту
+                        // не прерывается; в режиме incremental страницы текущего поколения сверяются с сайтом.
+                        // Прерванный обход с журналом продолжается в том же поколении
+                        int generation;
+                        KnownPages knownPages = null;
+                        Integer building = newSite.getBuildingGeneration();
+                        if (building != null && frontierStore.canResume(newSite.getId(), building, false)) {
+                            incremental = false;
+                            generation = siteGenerations.resume(newSite);
+                        } else if (incremental) {
+                            siteGenerations.abandon(newSite);
+                            generation = newSite.getActiveGeneration();
+                            if (frontierStore.canResume(newSite.getId(), generation, true)) {
+                                pageRevisions.removeDuplicates(newSite.getId(), generation, true);
+                            }
+                            knownPages = pageRevisions.load(newSite.getId(), generation);
                         } else {
-                            logger.warn("Индексация была прервана. Статус сайта {} не обновлен на INDEXED.", site.getName());
+                            generation = siteGenerations.begin(newSite);
+                        }
+                        boolean completed = false;
+                        try {
+                            completed = crawlAndIndexPages(newSite, site.getUrl(), generation, incremental, knownPages);
+                            if (completed) {
+                                siteGenerations.swap(newSite);
+                                updateSiteStatusToIndexed(newSite);
+                            } else {
+                                logger.warn("Индексация была прервана. Статус сайта {} не обновлен на INDEXED.", site.getName());
+                            }
+                        } finally {
+                            // Остановленное поколение ждёт продолжения обхода; после ошибки
+                            // недостроенное поколение удаляется в фоне
+                            if (!completed && !indexingInProgress
+                                    && frontierStore.canResume(newSite.getId(), generation, incremental)) {
+                                siteGenerations.suspend(newSite);
+                            } else {
+                                siteGenerations.abandon(newSite);
+                            }
                         }
                     } catch (Exception e) {
                         handleIndexingError(site.getUrl(), e);
@@ -128,21 +192,82 @@ public class IndexingService {
         }
     }
 
-    private void crawlAndIndexPages(searchengine.model.Site site, String startUrl) {
-        forkJoinPool = new ForkJoinPool();
+    // Возвращает true, если сайт обойдён полностью (индексацию не остановили)
+    private boolean crawlAndIndexPages(searchengine.model.Site site, String startUrl, int generation, boolean incremental,
+                                       KnownPages knownPages) throws InterruptedException {
+        CrawlFrontier frontier = frontierStore.open(site, generation, incremental);
+        siteStatistics.crawlStarted(site.getId(), frontier::pendingSize);
+        boolean completed = false;
         try {
-            forkJoinPool.invoke(new PageCrawler(site, startUrl, new HashSet<>(), pageRepository, this));
+            if (frontier.isResumed()) {
+                if (knownPages != null) {
+                    knownPages.markSeenWhere(frontier::isPathConfirmed);
+                }
+            } else if (!frontier.offer(startUrl)) {
+                logger.warn("Не удалось поставить в очередь стартовый URL: {}", startUrl);
+                return false;
+            }
+            crawl(site, frontier, generation, knownPages);
+            completed = indexingInProgress;
         } finally {
-            forkJoinPool.shutdown();
+            // Журнал завершённого обхода больше не нужен; прерванный остаётся для продолжения
+            siteStatistics.crawlFinished(site.getId());
+            frontierStore.close(frontier, !completed);
         }
+        if (knownPages != null) {
+            pageRevisions.flush(site.getId());
+            // Исчезнувшими считаем страницы только после полного обхода, не после остановки.
+            // Если очередь переполнялась, часть ссылок не была обойдена и их страницы удалять нельзя
+            long rejected = frontier.rejectedCount();
+            if (completed && rejected > 0) {
+                logger.warn("Сайт {}: очередь обхода отклонила {} ссылок, исчезнувшие страницы не удаляются",
+                        site.getUrl(), rejected);
+            } else if (completed) {
+                List<Integer> removed = knownPages.unseenIds();
+                pageRevisions.removePages(site.getId(), removed);
+                logger.info("Сайт {}: удалено {} исчезнувших страниц из {}", site.getUrl(), removed.size(),
+                        knownPages.size());
+            }
+        }
+        lemmaDictionary.flush(site.getId());
+        return completed;
     }
 
-    private void deleteSiteData(String siteUrl) {
-        searchengine.model.Site site = siteRepository.findByUrl(siteUrl);
-        if (site != null) {
-            int pagesDeleted = pageRepository.deleteAllBySiteId(site.getId());
-            siteRepository.delete(site);
-            logger.info("Удалено {} записей из таблицы page для сайта {}.", pagesDeleted, siteUrl);
+    private void crawl(searchengine.model.Site site, CrawlFrontier frontier, int generation, KnownPages knownPages)
+            throws InterruptedException {
+        pageBatchWriter.takeFailed(site.getId());
+        pageIndexer.takeFailed(site.getId());
+        CrawlContext context = new CrawlContext(site, frontier, pageRepository, this, politenessScheduler, pageBatchWriter, pageFetcher,
+                new DuplicateDetector(crawlerSettings.getNearDuplicateDistance()), generation, knownPages, pageRevisions,
+                siteStatistics);
+        try {
+            if (crawlerSettings.getMode() == CrawlMode.VIRTUAL_THREADS) {
+                virtualThreadCrawlEngine.crawl(context);
+            } else {
+                String first = frontier.poll();
+                if (first != null) {
+                    forkJoinPool = new ForkJoinPool();
+                    try {
+                        forkJoinPool.invoke(new PageCrawler(context, first));
+                    } finally {
+                        forkJoinPool.shutdown();
+                    }
+                }
+            }
+        } finally {
+            frontier.logStats();
+        }
+        // Статус INDEXED ставим только после того, как все страницы сайта записаны и проиндексированы;
+        // журнал закрывается после этого, чтобы в него попали завершения последних страниц
+        pageBatchWriter.awaitFlushed(site.getId());
+        pageIndexer.awaitIndexed(site.getId());
+        long failed = pageBatchWriter.takeFailed(site.getId());
+        if (failed > 0) {
+            throw new IllegalStateException("Не удалось записать в базу страниц: " + failed);
+        }
+        long unindexed = pageIndexer.takeFailed(site.getId());
+        if (unindexed > 0) {
+            throw new IllegalStateException("Не удалось проиндексировать страниц: " + unindexed);
         }
     }
 
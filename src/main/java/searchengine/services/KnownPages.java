@@ -0,0 +1,104 @@
+package searchengine.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Страницы сайта, сохранённые прошлым обходом: путь → id и валидаторы ответа.
+ * Нужны при повторном обходе (incremental): по ним отправляются условные запросы
+ * и определяется, изменилась ли страница. Страницы, не встреченные за обход,
+ * считаются удалёнными с сайта.
+ */
+public class KnownPages {
+
+    private final Map<String, Entry> byPath;
+    private final Set<Integer> seen = ConcurrentHashMap.newKeySet();
+
+    public KnownPages(Map<String, Entry> byPath) {
+        this.byPath = byPath;
+    }
+
+    public Entry get(String path) {
+        return byPath.get(path);
+    }
+
+    // Отмечает страницу встреченной при обходе; null, если страницы в прошлый раз не было
+    public Entry markSeen(String path) {
+        Entry entry = byPath.get(path);
+        if (entry != null) {
+            seen.add(entry.getId());
+        }
+        return entry;
+    }
+
+    // Отмечает встреченными страницы, обработанные до остановки прерванного обхода
+    public int markSeenWhere(Predicate<String> processed) {
+        int marked = 0;
+        for (Map.Entry<String, Entry> entry : byPath.entrySet()) {
+            if (processed.test(entry.getKey()) && seen.add(entry.getValue().getId())) {
+                marked++;
+            }
+        }
+        return marked;
+    }
+
+    // Страницы прошлого обхода, которые в этот раз не встретились
+    public List<Integer> unseenIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (Entry entry : byPath.values()) {
+            if (!seen.contains(entry.getId())) {
+                ids.add(entry.getId());
+            }
+        }
+        return ids;
+    }
+
+    public int size() {
+        return byPath.size();
+    }
+
+    // Сохранённое состояние одной страницы
+    public static final class Entry {
+        private final int id;
+        private final String etag;
+        private final String lastModified;
+        private final Long contentHash;
+        private final String aliasOf;
+
+        public Entry(int id, String etag, String lastModified, Long contentHash, String aliasOf) {
+            this.id = id;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.aliasOf = aliasOf;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public Long getContentHash() {
+            return contentHash;
+        }
+
+        public String getAliasOf() {
+            return aliasOf;
+        }
+
+        public boolean hasSameContent(long hash) {
+            return contentHash != null && contentHash == hash;
+        }
+    }
+}
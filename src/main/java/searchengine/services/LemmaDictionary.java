@@ -0,0 +1,235 @@
+package searchengine.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Словарь лемм сайтов в памяти: лемма → id строки таблицы lemma и накопленный
+ * прирост частоты. Новые леммы вставляются с нулевой частотой только ради id,
+ * а частоты сбрасываются в базу периодически одним пакетом
+ * INSERT ... ON DUPLICATE KEY UPDATE на сайт. Транзакции индексации страниц
+ * строки lemma больше не обновляют и не соперничают за блокировки частых лемм.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class LemmaDictionary {
+
+    private static final Logger logger = LoggerFactory.getLogger(LemmaDictionary.class);
+
+    // Многострочная вставка: число затронутых строк у INSERT IGNORE — ровно число созданных лемм
+    // (у ON DUPLICATE KEY UPDATE драйвер MySQL считает найденные строки, а пакет с
+    // rewriteBatchedStatements счётчиков по строкам не возвращает)
+    private static final String INSERT_NEW_SQL = "INSERT IGNORE INTO lemma (site_id, lemma, frequency) VALUES ";
+    private static final String ADD_FREQUENCY_SQL =
+            "INSERT INTO lemma (site_id, lemma, frequency) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE frequency = frequency + ?";
+    private static final int SELECT_CHUNK = 500;
+    private static final String LEMMA_COLLATION = "utf8mb4_bin";
+    private static final String COLUMN_COLLATION_SQL = "SELECT COLLATION_NAME FROM information_schema.COLUMNS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'lemma' AND COLUMN_NAME = 'lemma'";
+    // Длина столбца lemma.lemma (VARCHAR(500), в символах). INSERT IGNORE не отвергает длинное
+    // значение, а молча обрезает его, и обрезанную лемму потом не находит findLemmaIds
+    public static final int MAX_LEMMA_LENGTH = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SiteStatistics siteStatistics;
+    private final ConcurrentHashMap<Integer, SiteLemmas> sites = new ConcurrentHashMap<>();
+
+    public LemmaDictionary(JdbcTemplate jdbcTemplate, SiteStatistics siteStatistics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.siteStatistics = siteStatistics;
+    }
+
+    // ddl-auto: update не меняет collation существующего столбца. В базе, созданной до перехода
+    // на бинарное сравнение, "все" и "всё" совпадали бы в уникальном ключе и в findLemmaIds.
+    // Прежний ключ уже не допускал таких пар, поэтому смена collation его не нарушит
+    @PostConstruct
+    public void ensureBinaryCollation() {
+        List<String> collation = jdbcTemplate.queryForList(COLUMN_COLLATION_SQL, String.class);
+        if (collation.isEmpty() || LEMMA_COLLATION.equalsIgnoreCase(collation.get(0))) {
+            return;
+        }
+        logger.info("Столбец lemma.lemma переводится с {} на {}", collation.get(0), LEMMA_COLLATION);
+        jdbcTemplate.execute("ALTER TABLE lemma MODIFY lemma VARCHAR(" + MAX_LEMMA_LENGTH
+                + ") CHARACTER SET utf8mb4 COLLATE " + LEMMA_COLLATION + " NOT NULL");
+    }
+
+    // Помещается ли лемма в столбец lemma без обрезания
+    public static boolean fits(String lemma) {
+        return lemma.length() <= MAX_LEMMA_LENGTH
+                || lemma.codePointCount(0, lemma.length()) <= MAX_LEMMA_LENGTH;
+    }
+
+    // id лемм сайта; отсутствующие в словаре леммы создаются в базе отдельной короткой транзакцией.
+    // Слишком длинные леммы не сохраняются, и id для них в результате нет
+    public Map<String, Integer> resolveIds(int siteId, Collection<String> lemmas) {
+        SiteLemmas site = siteLemmas(siteId);
+        Map<String, Integer> result = new HashMap<>(lemmas.size() * 2);
+        TreeSet<String> missing = new TreeSet<>();
+        for (String lemma : lemmas) {
+            Integer id = site.ids.get(lemma);
+            if (id != null) {
+                result.put(lemma, id);
+            } else if (fits(lemma)) {
+                missing.add(lemma);
+            } else {
+                logger.debug("Лемма длиннее {} символов пропущена (сайт {})", MAX_LEMMA_LENGTH, siteId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        // Сортировка задаёт одинаковый порядок блокировок строк lemma у параллельных вставок
+        List<String> sorted = new ArrayList<>(missing);
+        int inserted = 0;
+        for (int from = 0; from < sorted.size(); from += SELECT_CHUNK) {
+            List<String> chunk = sorted.subList(from, Math.min(sorted.size(), from + SELECT_CHUNK));
+            Object[] args = new Object[chunk.size() * 2];
+            for (int i = 0; i < chunk.size(); i++) {
+                args[2 * i] = siteId;
+                args[2 * i + 1] = chunk.get(i);
+            }
+            inserted += jdbcTemplate.update(INSERT_NEW_SQL
+                    + String.join(",", Collections.nCopies(chunk.size(), "(?, ?, 0)")), args);
+        }
+        siteStatistics.lemmasAdded(siteId, inserted);
+        Map<String, Integer> created = findLemmaIds(siteId, sorted);
+        site.ids.putAll(created);
+        result.putAll(created);
+        return result;
+    }
+
+    // Учитывает прирост частот после фиксации страниц; в базу попадёт при следующем сбросе
+    public void addFrequencies(int siteId, Map<String, Integer> deltas) {
+        SiteLemmas site = siteLemmas(siteId);
+        site.swapLock.readLock().lock();
+        try {
+            deltas.forEach((lemma, delta) -> site.pending.merge(lemma, delta, Integer::sum));
+        } finally {
+            site.swapLock.readLock().unlock();
+        }
+    }
+
+    // Записывает прирост частот сразу, в транзакции вызывающего кода (мимо накопителя);
+    // строки блокируются в порядке лемм, как и при сбросе
+    public void writeFrequencies(int siteId, Map<String, Integer> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(deltas.size());
+        new TreeMap<>(deltas).forEach((lemma, delta) -> rows.add(new Object[]{siteId, lemma, delta, delta}));
+        jdbcTemplate.batchUpdate(ADD_FREQUENCY_SQL, rows);
+    }
+
+    @Scheduled(fixedDelayString = "${crawler-settings.lemma-flush-interval-ms:2000}")
+    public void flushAll() {
+        for (Integer siteId : sites.keySet()) {
+            flush(siteId);
+        }
+    }
+
+    // Записывает накопленные частоты сайта; вызывается и перед сменой статуса сайта на INDEXED
+    public void flush(int siteId) {
+        SiteLemmas site = sites.get(siteId);
+        if (site == null) {
+            return;
+        }
+        synchronized (site) {
+            ConcurrentHashMap<String, Integer> drained;
+            site.swapLock.writeLock().lock();
+            try {
+                if (site.pending.isEmpty()) {
+                    return;
+                }
+                drained = site.pending;
+                site.pending = new ConcurrentHashMap<>();
+            } finally {
+                site.swapLock.writeLock().unlock();
+            }
+            TreeMap<String, Integer> sorted = new TreeMap<>(drained);
+            List<Object[]> rows = new ArrayList<>(sorted.size());
+            sorted.forEach((lemma, delta) -> rows.add(new Object[]{siteId, lemma, delta, delta}));
+            try {
+                jdbcTemplate.batchUpdate(ADD_FREQUENCY_SQL, rows);
+                logger.debug("Сброшены частоты {} лемм сайта {}", rows.size(), siteId);
+            } catch (RuntimeException e) {
+                // Прирост не теряется: вернётся в очередь и будет записан при следующем сбросе
+                addFrequencies(siteId, sorted);
+                logger.error("Ошибка записи частот лемм сайта {}: {}", siteId, e.getMessage());
+            }
+        }
+    }
+
+    // Блокировка на время от получения id лемм до фиксации строк index, которые на них ссылаются:
+    // новая лемма до этого момента имеет нулевую частоту и выглядит для очистки осиротевшей
+    public Lock usageLock(int siteId) {
+        return siteLemmas(siteId).purgeLock.readLock();
+    }
+
+    // Блокировка удаления осиротевших лемм сайта: не пересекается с usageLock
+    public Lock purgeLock(int siteId) {
+        return siteLemmas(siteId).purgeLock.writeLock();
+    }
+
+    // Забывает id лемм, строки которых удалены (леммы без страниц)
+    public void forget(int siteId, Collection<String> lemmas) {
+        SiteLemmas site = sites.get(siteId);
+        if (site != null) {
+            lemmas.forEach(site.ids::remove);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushAll();
+    }
+
+    private Map<String, Integer> findLemmaIds(int siteId, List<String> lemmas) {
+        Map<String, Integer> ids = new HashMap<>(lemmas.size() * 2);
+        for (int from = 0; from < lemmas.size(); from += SELECT_CHUNK) {
+            List<String> chunk = lemmas.subList(from, Math.min(lemmas.size(), from + SELECT_CHUNK));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            Object[] args = new Object[chunk.size() + 1];
+            args[0] = siteId;
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i + 1] = chunk.get(i);
+            }
+            jdbcTemplate.query("SELECT id, lemma FROM lemma WHERE site_id = ? AND lemma IN (" + placeholders + ")",
+                    rs -> {
+                        ids.put(rs.getString("lemma"), rs.getInt("id"));
+                    }, args);
+        }
+        return ids;
+    }
+
+    private SiteLemmas siteLemmas(int siteId) {
+        return sites.computeIfAbsent(siteId, id -> new SiteLemmas());
+    }
+
+    // Словарь одного сайта. Запись приростов идёт под общей блокировкой чтения,
+    // подмена накопителя при сбросе — под блокировкой записи
+    private static final class SiteLemmas {
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+        private final ReentrantReadWriteLock purgeLock = new ReentrantReadWriteLock();
+        private volatile ConcurrentHashMap<String, Integer> pending = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,137 @@
+package searchengine.services;
+
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import searchengine.util.BoundedCache;
+import searchengine.util.CharSlice;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Единственный на приложение экземпляр морфологических словарей.
+ * Каждый словарь занимает десятки мегабайт и загружается несколько секунд,
+ * поэтому он загружается один раз и разделяется между всеми потоками
+ * (словари после загрузки только читаются). Частота слов распределена по Ципфу,
+ * так что результат лемматизации кэшируется: большинство слов до словаря не доходят.
+ * Экземпляр доступен и как бин Spring (см. AppConfig), и через getInstance()
+ * для статического кода вроде TextProcessor.
+ */
+public final class MorphologyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MorphologyService.class);
+
+    private static final int LEMMA_CACHE_SIZE = 200_000;
+    // Отметка в кэше для служебных и неизвестных слов: null в кэше хранить нельзя
+    private static final String NO_LEMMA = "";
+
+    private final LuceneMorphology russianMorphology;
+    private final LuceneMorphology englishMorphology;
+    // Ключ — слово в нижнем регистре; искать можно прямо по буферу разборщика, не создавая строку
+    private final BoundedCache<CharSlice, String> lemmaCache = new BoundedCache<>(LEMMA_CACHE_SIZE);
+    private final ThreadLocal<CharSlice> probes = ThreadLocal.withInitial(CharSlice::view);
+
+    private MorphologyService() {
+        long started = System.nanoTime();
+        russianMorphology = load("ru");
+        englishMorphology = load("en");
+        logger.info("Морфологические словари загружены за {} мс", (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public static MorphologyService getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // Лемма слова или null, если слово служебное или отсутствует в словаре
+    public String lemmaOf(String word) {
+        String lower = word.toLowerCase(Locale.ROOT);
+        return lemmaOf(lower.toCharArray(), lower.length());
+    }
+
+    // То же для слова buffer[0..length), уже приведённого к нижнему регистру (см. Tokenizer);
+    // строка слова создаётся только при промахе кэша
+    public String lemmaOf(char[] buffer, int length) {
+        if (length == 0) {
+            return null;
+        }
+        CharSlice probe = probes.get().wrap(buffer, length);
+        String cached = lemmaCache.get(probe, CharSlice::copy);
+        if (cached == null) {
+            String lemma = computeLemma(new String(buffer, 0, length));
+            cached = lemma == null ? NO_LEMMA : lemma;
+            lemmaCache.put(probe.copy(), cached);
+        }
+        return cached.isEmpty() ? null : cached;
+    }
+
+    public List<String> getNormalForms(String word) {
+        return morphologyFor(word).getNormalForms(word);
+    }
+
+    public List<String> getMorphInfo(String word) {
+        return morphologyFor(word).getMorphInfo(word);
+    }
+
+    // Словарь по коду языка: ru или en
+    public LuceneMorphology getMorphology(String language) {
+        switch (language.toLowerCase(Locale.ROOT)) {
+            case "ru":
+                return russianMorphology;
+            case "en":
+                return englishMorphology;
+            default:
+                throw new IllegalArgumentException("Неизвестный язык: " + language);
+        }
+    }
+
+    private String computeLemma(String lower) {
+        LuceneMorphology morphology = morphologyFor(lower);
+        if (morphology == null) {
+            return null;
+        }
+        try {
+            if (isServicePartOfSpeech(morphology.getMorphInfo(lower))) {
+                return null;
+            }
+            List<String> normalForms = morphology.getNormalForms(lower);
+            return normalForms.isEmpty() ? null : normalForms.get(0);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private LuceneMorphology morphologyFor(String word) {
+        return !word.isEmpty() && isCyrillic(word.charAt(0)) ? russianMorphology : englishMorphology;
+    }
+
+    private static boolean isCyrillic(char c) {
+        return Character.UnicodeBlock.of(c) == Character.UnicodeBlock.CYRILLIC;
+    }
+
+    private static boolean isServicePartOfSpeech(List<String> morphInfo) {
+        return morphInfo.stream().anyMatch(info -> info.contains("СОЮЗ") ||
+                info.contains("МЕЖД") ||
+                info.contains("ПРЕДЛ") ||
+                info.contains("ЧАСТ") ||
+                info.contains("CONJ") ||  // Для английского языка
+                info.contains("PART"));   // Для английского языка
+    }
+
+    private static LuceneMorphology load(String language) {
+        try {
+            return "ru".equals(language) ? new RussianLuceneMorphology() : new EnglishLuceneMorphology();
+        } catch (IOException e) {
+            logger.error("Ошибка при загрузке морфологического словаря ({}): {}", language, e.getMessage());
+            return null;
+        }
+    }
+
+    // Ленивая потокобезопасная инициализация средствами загрузчика классов
+    private static final class Holder {
+        private static final MorphologyService INSTANCE = new MorphologyService();
+    }
+}
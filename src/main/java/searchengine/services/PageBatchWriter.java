@@ -0,0 +1,276 @@
+package searchengine.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Page;
+import searchengine.util.PendingCounter;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Отложенная (write-behind) запись страниц. Обходчики кладут страницы в
+ * ограниченную очередь, потоки записи сбрасывают их пакетами через JDBC batch
+ * (rewriteBatchedStatements превращает пакет в многострочный INSERT).
+ * Пакет сбрасывается по размеру или по истечении интервала; если база не
+ * успевает, очередь заполняется и обходчики ждут места в ней.
+ */
+@Component
+public class PageBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageBatchWriter.class);
+
+    private static final String INSERT_PAGE_SQL =
+            "INSERT INTO page (site_id, path, code, content, content_type, content_hash, alias_of, etag, last_modified, " +
+            "generation) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_CONTENT_SQL =
+            "INSERT INTO page_content (page_id, data) VALUES (?, ?)";
+
+    private final DataSource dataSource;
+    private final CrawlerSettings crawlerSettings;
+    private final PageIndexer pageIndexer;
+    private final PageContentStore contentStore;
+    private final SiteStatistics siteStatistics;
+    private final BlockingQueue<Page> queue;
+    private final ConcurrentHashMap<Integer, PendingCounter> pendingBySite = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, LongAdder> failedBySite = new ConcurrentHashMap<>();
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean running;
+
+    public PageBatchWriter(DataSource dataSource, CrawlerSettings crawlerSettings, PageIndexer pageIndexer,
+                           PageContentStore contentStore, SiteStatistics siteStatistics) {
+        this.dataSource = dataSource;
+        this.crawlerSettings = crawlerSettings;
+        this.pageIndexer = pageIndexer;
+        this.contentStore = contentStore;
+        this.siteStatistics = siteStatistics;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, crawlerSettings.getPageQueueCapacity()));
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        int threads = Math.max(1, crawlerSettings.getPageWriterThreads());
+        for (int i = 0; i < threads; i++) {
+            Thread writer = new Thread(this::writeLoop, "page-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Thread writer : writers) {
+            writer.interrupt();
+        }
+        for (Thread writer : writers) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        // Сбрасываем то, что осталось в очереди после остановки потоков
+        List<Page> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+    }
+
+    // Ставит страницу в очередь на запись; блокируется, если очередь заполнена
+    public void submit(Page page) throws InterruptedException {
+        PendingCounter pending = pendingFor(page.getSite().getId());
+        pending.increment();
+        try {
+            queue.put(page);
+        } catch (InterruptedException e) {
+            pending.decrement();
+            throw e;
+        }
+    }
+
+    // Дожидается записи всех страниц сайта, поставленных в очередь к этому моменту
+    public void awaitFlushed(int siteId) throws InterruptedException {
+        pendingFor(siteId).awaitZero();
+    }
+
+    // Число страниц сайта, которые не удалось записать с прошлого вызова; счётчик обнуляется
+    public long takeFailed(int siteId) {
+        LongAdder failed = failedBySite.get(siteId);
+        return failed == null ? 0 : failed.sumThenReset();
+    }
+
+    public int queueSize() {
+        return queue.size();
+    }
+
+    private PendingCounter pendingFor(int siteId) {
+        return pendingBySite.computeIfAbsent(siteId, id -> new PendingCounter());
+    }
+
+    private void writeLoop() {
+        int batchSize = Math.max(1, crawlerSettings.getPageBatchSize());
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(crawlerSettings.getPageFlushIntervalMs());
+        List<Page> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Page first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Page next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                if (!batch.isEmpty()) {
+                    try {
+                        flush(batch);
+                    } catch (RuntimeException e) {
+                        // Поток записи не должен погибнуть из-за одного пакета: их всего несколько
+                        logger.error("Ошибка записи пакета из {} страниц: {}", batch.size(), e.getMessage());
+                    }
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void flush(List<Page> batch) {
+        try {
+            List<Page> written = batch;
+            try {
+                insertBatch(batch);
+                logger.debug("Записано страниц пакетом: {}", batch.size());
+            } catch (SQLException | RuntimeException e) {
+                // Одна неудачная строка не должна стоить всего пакета: повторяем по одной странице.
+                // Ошибка может прийти и не из JDBC, например из словаря сжатия (DataAccessException)
+                logger.warn("Ошибка пакетной записи {} страниц, запись по одной: {}", batch.size(), e.getMessage());
+                written = insertOneByOne(batch);
+            }
+            for (Page page : written) {
+                siteStatistics.pagesAdded(page.getSite().getId(), page.getGeneration(), 1);
+            }
+            // Передаём страницы на индексацию до того, как снять их со счётчика сайта,
+            // чтобы ожидание сайта не проскочило между стадиями
+            try {
+                pageIndexer.submit(written);
+            } catch (RuntimeException e) {
+                // Записанные, но не отданные индексатору страницы считаются потерянными
+                for (Page page : written) {
+                    failedBySite.computeIfAbsent(page.getSite().getId(), id -> new LongAdder()).increment();
+                }
+                logger.error("Не удалось передать на индексацию {} страниц: {}", written.size(), e.getMessage());
+            }
+        } finally {
+            for (Page page : batch) {
+                pendingFor(page.getSite().getId()).decrement();
+            }
+        }
+    }
+
+    // Незаписанные страницы учитываются в failedBySite: обход сайта не завершится успешно,
+    // а их URL останутся в журнале необработанными (onIndexed не вызывается)
+    private List<Page> insertOneByOne(List<Page> batch) {
+        List<Page> written = new ArrayList<>(batch.size());
+        for (Page page : batch) {
+            try {
+                insertBatch(List.of(page));
+                written.add(page);
+            } catch (SQLException | RuntimeException e) {
+                failedBySite.computeIfAbsent(page.getSite().getId(), id -> new LongAdder()).increment();
+                logger.error("Не удалось записать страницу {}: {}", page.getPath(), e.getMessage());
+            }
+        }
+        return written;
+    }
+
+    // Любая ошибка до фиксации, не только SQLException, откатывает транзакцию: иначе
+    // возврат autoCommit зафиксировал бы строки page без их page_content
+    private void insertBatch(List<Page> batch) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_PAGE_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (Page page : batch) {
+                    statement.setInt(1, page.getSite().getId());
+                    statement.setString(2, page.getPath());
+                    statement.setInt(3, page.getCode());
+                    statement.setString(4, contentStore.pageColumnValue(page));
+                    statement.setString(5, page.getContentType());
+                    statement.setObject(6, page.getContentHash(), Types.BIGINT);
+                    statement.setString(7, page.getAliasOf());
+                    statement.setString(8, page.getEtag());
+                    statement.setString(9, page.getLastModified());
+                    statement.setInt(10, page.getGeneration());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                // Идентификаторы нужны следующим стадиям (индексация лемм)
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    int i = 0;
+                    while (keys.next() && i < batch.size()) {
+                        batch.get(i++).setId(keys.getInt(1));
+                    }
+                }
+                if (contentStore.isCompressed()) {
+                    insertContents(connection, batch);
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    // Сжатый HTML пишется в той же транзакции, что и строки page; в памяти у страниц
+    // содержимое остаётся, поэтому индексатору распаковывать ничего не нужно
+    private void insertContents(Connection connection, List<Page> batch) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_CONTENT_SQL)) {
+            for (Page page : batch) {
+                if (page.getId() == null || page.getContent() == null || page.getContent().isEmpty()) {
+                    continue;
+                }
+                statement.setInt(1, page.getId());
+                statement.setBytes(2, contentStore.compress(page.getSite().getId(), page.getContent()));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.ContentStorage;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Page;
+import searchengine.repository.PageRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Хранилище HTML страниц. В режиме COMPRESSED содержимое сжимается deflate
+ * с общим для сайта предустановленным словарём и пишется в таблицу page_content,
+ * а page.content остаётся пустым: строки page становятся короткими, и выборки
+ * метаданных не тянут HTML. Распаковка выполняется только по запросу (load),
+ * например когда для сниппета нет подготовленного текста.
+ */
+@Component
+public class PageContentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageContentStore.class);
+
+    // Первый байт сжатых данных: формат
+    private static final byte RAW_DEFLATE = 0;
+    private static final byte SITE_DICTIONARY = 1;
+    // Deflate использует только последние 32 КБ словаря
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int SELECT_CHUNK = 500;
+
+    private static final String INSERT_CONTENT_SQL =
+            "INSERT INTO page_content (page_id, data) VALUES (?, ?) ON DUPLICATE KEY UPDATE data = VALUES(data)";
+    private static final String INSERT_DICTIONARY_SQL =
+            "INSERT INTO content_dictionary (site_id, dictionary) VALUES (?, ?) ON DUPLICATE KEY UPDATE site_id = site_id";
+    private static final String DELETE_UNUSED_DICTIONARY_SQL =
+            "DELETE FROM content_dictionary WHERE site_id = ? AND NOT EXISTS (SELECT 1 FROM page WHERE site_id = ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate dictionaryTransaction;
+    private final boolean compressed;
+    private final int level;
+    private final ConcurrentHashMap<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    // Сжатие страниц сайта (чтение) и удаление его словаря (запись) не пересекаются
+    private final ConcurrentHashMap<Integer, ReentrantReadWriteLock> dictionaryLocks = new ConcurrentHashMap<>();
+
+    public PageContentStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                            CrawlerSettings crawlerSettings) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Словарь фиксируется отдельно: откат транзакции страницы не должен оставить его только в памяти
+        this.dictionaryTransaction = new TransactionTemplate(transactionManager);
+        this.dictionaryTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.compressed = crawlerSettings.getContentStorage() == ContentStorage.COMPRESSED;
+        this.level = crawlerSettings.getCompressionLevel();
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    // Значение столбца page.content для новой строки
+    public String pageColumnValue(Page page) {
+        return compressed ? "" : page.getContent();
+    }
+
+    // Сжатое содержимое для строки page_content
+    public byte[] compress(int siteId, String content) {
+        byte[] input = content.getBytes(StandardCharsets.UTF_8);
+        Lock writer = dictionaryLock(siteId).readLock();
+        writer.lock();
+        Deflater deflater = new Deflater(level);
+        try {
+            byte[] dictionary = dictionaryFor(siteId, input);
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            out.write(dictionary != null ? SITE_DICTIONARY : RAW_DEFLATE);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+            writer.unlock();
+        }
+    }
+
+    // Сохраняет страницу через JPA с учётом режима хранения. Текст и заголовок
+    // извлекаются заранее, чтобы индексатору не понадобился HTML, которого в page уже нет
+    public Page save(Page page, PageRepository pageRepository) {
+        if (!compressed || page.getContent() == null || page.getContent().isEmpty()) {
+            return pageRepository.save(page);
+        }
+        String content = page.getContent();
+        page.getText();
+        page.setContent("");
+        Page saved = pageRepository.save(page);
+        jdbcTemplate.update(INSERT_CONTENT_SQL, saved.getId(), compress(saved.getSite().getId(), content));
+        return saved;
+    }
+
+    // Заменяет сжатое содержимое уже сохранённой страницы (переиндексация одной страницы)
+    public void replaceContent(int siteId, int pageId, String content) {
+        if (!compressed) {
+            return;
+        }
+        if (content == null || content.isEmpty()) {
+            jdbcTemplate.update("DELETE FROM page_content WHERE page_id = ?", pageId);
+            return;
+        }
+        jdbcTemplate.update(INSERT_CONTENT_SQL, pageId, compress(siteId, content));
+    }
+
+    // HTML страниц по id: распаковывается из page_content или читается из page.content
+    public Map<Integer, String> load(Collection<Integer> pageIds) {
+        Map<Integer, String> contents = new HashMap<>(pageIds.size() * 2);
+        List<Integer> ids = new ArrayList<>(pageIds);
+        for (int from = 0; from < ids.size(); from += SELECT_CHUNK) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + SELECT_CHUNK));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("SELECT c.page_id, p.site_id, c.data FROM page_content c "
+                    + "JOIN page p ON p.id = c.page_id WHERE c.page_id IN (" + placeholders + ")", rs -> {
+                String content = decompress(rs.getInt("site_id"), rs.getBytes("data"));
+                if (content != null) {
+                    contents.put(rs.getInt("page_id"), content);
+                }
+            }, chunk.toArray());
+            // Страницы, сохранённые без сжатия
+            jdbcTemplate.query("SELECT id, content FROM page WHERE content <> '' AND id IN (" + placeholders + ")",
+                    rs -> {
+                        contents.putIfAbsent(rs.getInt("id"), rs.getString("content"));
+                    }, chunk.toArray());
+        }
+        return contents;
+    }
+
+    private String decompress(int siteId, byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 1, data.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0) {
+                    if (inflater.needsDictionary()) {
+                        byte[] dictionary = data[0] == SITE_DICTIONARY ? dictionaryFor(siteId, null) : null;
+                        if (dictionary == null) {
+                            logger.warn("Нет словаря сжатия для сайта {}", siteId);
+                            return null;
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        // Данные кончились раньше конца потока deflate: запись обрезана
+                        logger.warn("Обрезанное содержимое страницы сайта {}", siteId);
+                        return null;
+                    }
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException | IllegalArgumentException e) {
+            // IllegalArgumentException: контрольная сумма словаря не совпала, запись сжата другим словарём
+            logger.warn("Повреждённое содержимое страницы сайта {}: {}", siteId, e.getMessage());
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Удаляет словарь сайта, у которого не осталось ни одной страницы (удалено последнее поколение).
+    // Следующая сохранённая страница создаст новый словарь. Возвращает true, если словарь удалён
+    // Выполняется под той же блокировкой сайта, что и сжатие: иначе писатель мог бы взять из базы
+    // удаляемый словарь и сжать им страницу. Страницу писатель вставляет раньше, чем сжимает её
+    // содержимое, а подзапрос DELETE ждёт незафиксированных строк page, так что её словарь не удалится
+    public boolean dropDictionaryIfUnused(int siteId) {
+        Lock exclusive = dictionaryLock(siteId).writeLock();
+        exclusive.lock();
+        try {
+            boolean dropped = jdbcTemplate.update(DELETE_UNUSED_DICTIONARY_SQL, siteId, siteId) > 0;
+            if (dropped) {
+                dictionaries.remove(siteId);
+            }
+            return dropped;
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    private ReentrantReadWriteLock dictionaryLock(int siteId) {
+        return dictionaryLocks.computeIfAbsent(siteId, id -> new ReentrantReadWriteLock());
+    }
+
+    // Словарь сайта: из памяти, из базы или (при первой записи) из начала переданной страницы.
+    // Если два потока создают словарь одновременно, в базе остаётся первый, и оба используют его
+    private byte[] dictionaryFor(int siteId, byte[] sample) {
+        byte[] dictionary = dictionaries.get(siteId);
+        if (dictionary != null) {
+            return dictionary;
+        }
+        List<byte[]> stored = dictionaryTransaction.execute(status -> {
+            List<byte[]> rows = jdbcTemplate.query("SELECT dictionary FROM content_dictionary WHERE site_id = ?",
+                    (rs, rowNum) -> rs.getBytes(1), siteId);
+            if (rows.isEmpty() && sample != null && sample.length > 0) {
+                jdbcTemplate.update(INSERT_DICTIONARY_SQL, siteId,
+                        Arrays.copyOf(sample, Math.min(sample.length, DICTIONARY_SIZE)));
+                rows = jdbcTemplate.query("SELECT dictionary FROM content_dictionary WHERE site_id = ?",
+                        (rs, rowNum) -> rs.getBytes(1), siteId);
+            }
+            return rows;
+        });
+        if (stored == null || stored.isEmpty()) {
+            return null;
+        }
+        dictionaries.putIfAbsent(siteId, stored.get(0));
+        return dictionaries.get(siteId);
+    }
+}
@@ -1,112 +1,239 @@
 package searchengine.services;
 
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import searchengine.model.Page;
 import searchengine.model.Site;
-import searchengine.repository.PageRepository;
+import searchengine.util.ContentFingerprint;
+import searchengine.util.HtmlTextExtractor;
 
 import java.io.IOException;
-import java.net.URL;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.*;
 import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class PageCrawler extends RecursiveAction {
     private static final Logger logger = LoggerFactory.getLogger(PageCrawler.class);
+    // Столько URL задача забирает из очереди за раз: остальные ждут в ограниченной очереди сайта,
+    // а не в списке подзадач
+    private static final int FORK_CHUNK = 32;
+    private final CrawlContext context;
     private final Site site;
     private final String url;
-    private final Set<String> visitedUrls;
-    private final PageRepository pageRepository;
+    private final CrawlFrontier frontier;
     private final IndexingService indexingService;
+    private final DuplicateDetector duplicates;
+    private final KnownPages knownPages;
+    // URL завершён, когда ссылки страницы поставлены в очередь и сама страница записана
+    // и проиндексирована; до этого при возобновлении обхода он загружается снова
+    private final AtomicInteger unfinished = new AtomicInteger(1);
+    private volatile String claimedPath;
 
-    public PageCrawler(Site site, String url, Set<String> visitedUrls, PageRepository pageRepository, IndexingService indexingService) {
-        this.site = site;
+    public PageCrawler(CrawlContext context, String url) {
+        this.context = context;
+        this.site = context.getSite();
         this.url = url;
-        this.visitedUrls = visitedUrls;
-        this.pageRepository = pageRepository;
-        this.indexingService = indexingService;
+        this.frontier = context.getFrontier();
+        this.indexingService = context.getIndexingService();
+        this.duplicates = context.getDuplicateDetector();
+        this.knownPages = context.getKnownPages();
     }
 
     @Override
     protected void compute() {
-        if (!checkAndLogStopCondition("Начало обработки")) return;
-
-        synchronized (visitedUrls) {
-            if (visitedUrls.contains(url)) {
-                logger.debug("URL уже обработан: {}", url);
-                return;
-            }
-            visitedUrls.add(url);
-        }
-
         try {
-            long delay = 500 + new Random().nextInt(4500);
-            logger.debug("Задержка перед запросом: {} ms для URL: {}", delay, url);
-            Thread.sleep(delay);
+            // В режиме ForkJoin задача сама дожидается своей очереди к хосту
+            context.getPolitenessScheduler().awaitTurn(url);
+        } catch (InterruptedException e) {
+            logger.warn("Индексация прервана для URL {}: поток остановлен.", url);
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (crawlPage()) {
+            forkPending();
+        }
+    }
 
-            if (!checkAndLogStopCondition("Перед запросом")) return;
+    // Обрабатывает один URL без порождения подзадач: загрузка, сохранение, добавление ссылок в очередь.
+    // Используется и задачами ForkJoin, и движком на виртуальных потоках.
+    // Вызывающий код отвечает за то, чтобы к этому моменту наступила очередь хоста (PolitenessScheduler).
+    // Возвращает false, если обработка прервана остановкой индексации.
+    public boolean crawlPage() {
+        if (!checkAndLogStopCondition("Перед запросом")) return false;
 
+        try {
             logger.info("Обработка URL: {}", url);
-            Connection.Response response = Jsoup.connect(url)
-                    .userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6")
-                    .referrer("http://www.google.com")
-                    .ignoreContentType(true)
-                    .execute();
+            // При повторном обходе просим сервер ответить 304, если страница не менялась
+            String path = pathOf(url);
+            Map<String, String> headers = new HashMap<>();
+            KnownPages.Entry known = knownPages == null ? null : knownPages.get(path);
+            if (known != null) {
+                if (known.getEtag() != null) {
+                    headers.put("If-None-Match", known.getEtag());
+                }
+                if (known.getLastModified() != null) {
+                    headers.put("If-Modified-Since", known.getLastModified());
+                }
+            }
+            PageFetcher.Response response = context.getPageFetcher().fetch(url, headers);
+            if (response.statusCode() >= 400) {
+                throw new IOException("Ошибка HTTP " + response.statusCode());
+            }
+            context.getSiteStatistics().pageFetched(site.getId());
 
-            handleResponse(response);
+            handleResponse(response, path);
 
         } catch (IOException e) {
             handleError(e);
         } catch (InterruptedException e) {
-            logger.warn("Индексация прервана для URL {}: поток остановлен.", url);
+            logger.warn("Загрузка {} прервана: поток остановлен.", url);
             Thread.currentThread().interrupt();
+            return false;
+        }
+        // После остановки часть ссылок могла не попасть в очередь: URL остаётся незавершённым
+        if (!checkAndLogStopCondition("После обработки")) return false;
+        finishStep();
+        return true;
+    }
+
+    private void finishStep() {
+        if (unfinished.decrementAndGet() == 0) {
+            frontier.complete(url, claimedPath);
+        }
+    }
+
+    // Забираем из очереди сайта всё, что накопилось, порциями по FORK_CHUNK и обрабатываем параллельно.
+    // Каждая задача вызывает этот метод после добавления ссылок, поэтому ни один URL не теряется.
+    private void forkPending() {
+        List<PageCrawler> subtasks = new ArrayList<>(FORK_CHUNK);
+        String next;
+        while (true) {
+            while (subtasks.size() < FORK_CHUNK && checkAndLogStopCondition("Перед запуском подзадач")
+                    && (next = frontier.poll()) != null) {
+                subtasks.add(new PageCrawler(context, next));
+            }
+            if (subtasks.isEmpty()) {
+                return;
+            }
+            invokeAll(subtasks);
+            subtasks.clear();
+        }
+    }
+
+    // Путь в том же виде, в каком его раньше давал URL.getPath(): без декодирования
+    private static String pathOf(String url) throws IOException {
+        try {
+            return new URI(url).getRawPath();
+        } catch (URISyntaxException e) {
+            throw new IOException("Некорректный URL: " + url, e);
         }
     }
 
-    private void handleResponse(Connection.Response response) throws IOException {
+    private void handleResponse(PageFetcher.Response response, String path) throws IOException {
         String contentType = response.contentType();
         int statusCode = response.statusCode();
-        String path = new URL(url).getPath();
 
-        // Проверка на уникальность страницы
-        if (pageRepository.existsByPathAndSiteId(path, site.getId())) {
+        // Проверка на уникальность страницы без запроса к базе
+        if (!frontier.claimPath(path)) {
             logger.info("Страница {} уже существует. Пропускаем сохранение.", url);
             return;
         }
+        claimedPath = path;
+
+        boolean isHtml = contentType != null && contentType.contains("text/html") && response.body() != null;
+        byte[] body = isHtml ? response.body() : null;
+        // Отпечаток посчитан загрузчиком по мере чтения тела
+        long contentHash = isHtml ? response.contentHash() : 0;
+        KnownPages.Entry previous = knownPages == null ? null : knownPages.markSeen(path);
+        if (previous != null) {
+            if (statusCode == 304 || (isHtml && previous.hasSameContent(contentHash))) {
+                keepUnchanged(previous, response, statusCode == 304 ? null : body, path);
+                return;
+            }
+            // Страница изменилась: прошлая версия уходит из индекса, новая сохраняется как при первом обходе
+            context.getPageRevisions().retire(site.getId(), previous.getId());
+        }
 
         Page page = new Page();
         page.setSite(site);
         page.setPath(path);
         page.setCode(statusCode);
+        page.setContentType(contentType);
+        page.setEtag(response.header("ETag"));
+        page.setLastModified(response.header("Last-Modified"));
 
         if (contentType != null && contentType.startsWith("image/")) {
             page.setContent("Image content: " + contentType);
             logger.info("Изображение добавлено: {}", url);
-        } else if (contentType != null && contentType.contains("text/html")) {
-            Document document = response.parse();
-            page.setContent(document.html());
+        } else if (isHtml) {
+            page.setContentHash(contentHash);
+            // Точный дубликат уже обработанной страницы не разбирается и не индексируется
+            String canonical = duplicates.claimExact(contentHash, path);
+            if (canonical != null) {
+                storeAlias(page, canonical);
+                return;
+            }
+            // Один проход по HTML даёт текст, заголовок и ссылки; дерево документа не строится
+            String html = new String(body, HtmlTextExtractor.charsetOf(body, response.charset()));
+            HtmlTextExtractor.Result extracted = HtmlTextExtractor.extract(html, url);
+            canonical = duplicates.claimNear(ContentFingerprint.simHash(extracted.getText()), path);
+            if (canonical != null) {
+                duplicates.redirect(contentHash, canonical);
+                // Ссылки почти-дубликата могут отличаться (параметры сортировки и т.п.), их не теряем
+                processLinks(extracted.getLinks());
+                storeAlias(page, canonical);
+                return;
+            }
+            page.setContent(html);
+            page.setTitle(extracted.getTitle());
+            page.setText(extracted.getText());
             logger.info("HTML-страница добавлена: {}", url);
-            processLinks(document);
+            processLinks(extracted.getLinks());
         } else {
             page.setContent("Unhandled content type: " + contentType);
             logger.info("Контент с неизвестным типом добавлен: {}", url);
         }
 
-        pageRepository.save(page);
+        storeOwn(page);
     }
 
-    private void processLinks(Document document) {
-        Elements links = document.select("a[href]");
-        List<PageCrawler> subtasks = new ArrayList<>();
-        for (Element link : links) {
-            if (!checkAndLogStopCondition("При обработке ссылок")) return;
+    // Страница не изменилась с прошлого обхода: не лемматизируется и не перезаписывается,
+    // из неё берутся только ссылки (при ответе 304 — из сохранённого HTML)
+    private void keepUnchanged(KnownPages.Entry previous, PageFetcher.Response response, byte[] body, String path) {
+        PageRevisions revisions = context.getPageRevisions();
+        revisions.updateValidators(previous, response.header("ETag"), response.header("Last-Modified"));
+        frontier.confirmPath(path);
+        logger.info("Страница {} не изменилась с прошлого обхода", url);
+        if (previous.getAliasOf() != null) {
+            return;
+        }
+        if (previous.getContentHash() != null) {
+            duplicates.claimExact(previous.getContentHash(), path);
+        }
+        String html = body != null
+                ? new String(body, HtmlTextExtractor.charsetOf(body, response.charset()))
+                : revisions.storedContent(previous.getId());
+        if (html == null || html.isEmpty()) {
+            return;
+        }
+        HtmlTextExtractor.Result extracted = HtmlTextExtractor.extract(html, url);
+        duplicates.claimNear(ContentFingerprint.simHash(extracted.getText()), path);
+        processLinks(extracted.getLinks());
+    }
 
-            String childUrl = link.absUrl("href");
+    // Дубликат хранится как ссылка на каноническую страницу, без содержимого
+    private void storeAlias(Page page, String canonicalPath) {
+        page.setAliasOf(canonicalPath);
+        page.setContent("");
+        logger.info("Страница {} повторяет {} — сохранена как псевдоним", url, canonicalPath);
+        storeOwn(page);
+    }
+
+    private void processLinks(List<String> links) {
+        for (String childUrl : links) {
+            if (!checkAndLogStopCondition("При обработке ссылок")) return;
 
             // Проверяем, что ссылка принадлежит корневому сайту
             if (!childUrl.startsWith(site.getUrl())) {
@@ -128,67 +255,84 @@ public class PageCrawler extends RecursiveAction {
                 continue;
             }
 
-            String childPath = null;
-            try {
-                childPath = new URL(childUrl).getPath();
-            } catch (Exception e) {
-                logger.warn("Ошибка извлечения пути из URL: {}", childUrl);
-            }
-
-            synchronized (visitedUrls) {
-                if (childPath != null && !visitedUrls.contains(childPath)) {
-                    visitedUrls.add(childPath);
-                    subtasks.add(new PageCrawler(site, childUrl, visitedUrls, pageRepository, indexingService));
-                    logger.debug("Добавлена ссылка в обработку: {}", childUrl);
-                } else {
-                    logger.debug("Ссылка уже обработана: {}", childUrl);
-                }
+            if (frontier.offer(childUrl)) {
+                logger.debug("Добавлена ссылка в обработку: {}", childUrl);
+            } else {
+                logger.debug("Ссылка уже обработана: {}", childUrl);
             }
         }
-        invokeAll(subtasks);
     }
 
     private void savePhoneLink(String telUrl) {
         String phoneNumber = telUrl.substring(4); // Убираем "tel:"
-        if (pageRepository.existsByPathAndSiteId(phoneNumber, site.getId())) {
+        if (!frontier.markSeen(telUrl)) {
             logger.info("Телефонный номер {} уже сохранён. Пропускаем.", phoneNumber);
             return;
         }
+        if (knownPages != null && knownPages.markSeen(phoneNumber) != null) {
+            frontier.confirmPath(phoneNumber);
+            return;
+        }
 
         Page page = new Page();
         page.setSite(site);
         page.setPath(phoneNumber);
         page.setCode(0); // Код 0 для телефонных ссылок
         page.setContent("Телефонный номер: " + phoneNumber);
-        pageRepository.save(page);
+        page.setOnIndexed(() -> frontier.confirmPath(phoneNumber));
+        store(page);
 
         logger.info("Сохранён телефонный номер: {}", phoneNumber);
     }
 
     private void saveJavaScriptLink(String jsUrl) {
-        if (pageRepository.existsByPathAndSiteId(jsUrl, site.getId())) {
+        if (!frontier.markSeen(jsUrl)) {
             logger.info("JavaScript ссылка {} уже сохранена. Пропускаем.", jsUrl);
             return;
         }
+        if (knownPages != null && knownPages.markSeen(jsUrl) != null) {
+            frontier.confirmPath(jsUrl);
+            return;
+        }
 
         Page page = new Page();
         page.setSite(site);
         page.setPath(jsUrl); // Сохраняем полный jsUrl как path
         page.setCode(0); // Код 0 для JavaScript ссылок
         page.setContent("JavaScript ссылка: " + jsUrl);
-        pageRepository.save(page);
+        page.setOnIndexed(() -> frontier.confirmPath(jsUrl));
+        store(page);
 
         logger.info("Сохранена JavaScript ссылка: {}", jsUrl);
     }
 
     private void handleError(IOException e) {
         logger.warn("Ошибка обработки URL {}: {}", url, e.getMessage());
+        context.getSiteStatistics().fetchFailed(site.getId());
         Page page = new Page();
         page.setSite(site);
         page.setPath(url);
         page.setCode(0);
         page.setContent("Ошибка обработки: " + e.getMessage());
-        pageRepository.save(page);
+        storeOwn(page);
+    }
+
+    // Страница, полученная по самому URL: он завершится не раньше, чем она будет проиндексирована
+    private void storeOwn(Page page) {
+        unfinished.incrementAndGet();
+        page.setOnIndexed(this::finishStep);
+        store(page);
+    }
+
+    // Страница уходит в очередь отложенной записи; при заполненной очереди ждём её освобождения
+    private void store(Page page) {
+        page.setGeneration(context.getGeneration());
+        try {
+            context.getPageBatchWriter().submit(page);
+        } catch (InterruptedException e) {
+            logger.warn("Запись страницы {} прервана: поток остановлен.", url);
+            Thread.currentThread().interrupt();
+        }
     }
 
     private boolean checkAndLogStopCondition(String stage) {
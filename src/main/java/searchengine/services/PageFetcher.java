@@ -0,0 +1,342 @@
+package searchengine.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.util.ContentFingerprint;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Загрузка страниц одним общим java.net.http.HttpClient: соединения с хостом
+ * переиспользуются (keep-alive для HTTP/1.1, мультиплексирование для HTTP/2),
+ * ответы запрашиваются сжатыми (gzip, deflate). Тело читается потоком буферов
+ * с ограничением размера как до распаковки, так и после, и только для текстовых
+ * типов; отпечаток содержимого считается по мере поступления данных.
+ */
+@Component
+public class PageFetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageFetcher.class);
+
+    // Brotli в JDK не декодируется, поэтому br не запрашиваем
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final String REFERER = "http://www.google.com";
+
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final String userAgent;
+    private final Duration requestTimeout;
+    private final int maxBodyBytes;
+
+    public PageFetcher(CrawlerSettings crawlerSettings) {
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(crawlerSettings.getConnectTimeoutMs()))
+                .executor(executor)
+                .build();
+        this.userAgent = crawlerSettings.getUserAgent();
+        this.requestTimeout = Duration.ofMillis(crawlerSettings.getRequestTimeoutMs());
+        this.maxBodyBytes = Math.max(1024, crawlerSettings.getMaxBodyBytes());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public Response fetch(String url) throws IOException, InterruptedException {
+        return fetch(url, Map.of());
+    }
+
+    // GET с дополнительными заголовками (например, условными If-None-Match / If-Modified-Since)
+    public Response fetch(String url, Map<String, String> headers) throws IOException, InterruptedException {
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректный URL: " + url, e);
+        }
+        request.timeout(requestTimeout)
+                .header("User-Agent", userAgent)
+                .header("Referer", REFERER)
+                .header("Accept-Encoding", ACCEPT_ENCODING);
+        headers.forEach(request::header);
+        HttpResponse<Body> response = client.send(request.GET().build(), this::bodySubscriber);
+        Body body = response.body();
+        byte[] decoded = null;
+        long contentHash = 0;
+        boolean truncated = false;
+        if (body != null) {
+            CappedBuffer content = decode(body.buffer, encodingOf(response.headers()), url);
+            decoded = content.toByteArray();
+            contentHash = content.fingerprint.value();
+            truncated = body.buffer.truncated || content.truncated;
+            if (truncated) {
+                logger.debug("Ответ {} обрезан до {} байт", url, maxBodyBytes);
+            }
+        }
+        return new Response(response.statusCode(), response.headers(), decoded, contentHash, truncated);
+    }
+
+    // Тело читается только у текстовых ответов; изображения и прочее отбрасываются без чтения в память
+    private HttpResponse.BodySubscriber<Body> bodySubscriber(HttpResponse.ResponseInfo info) {
+        String contentType = info.headers().firstValue("Content-Type").orElse("");
+        if (!isTextual(contentType)) {
+            return HttpResponse.BodySubscribers.replacing(null);
+        }
+        // Без сжатия отпечаток считается прямо по приходящим буферам
+        boolean identity = encodingOf(info.headers()).isEmpty();
+        return new CappedSubscriber(new CappedBuffer(maxBodyBytes, identity));
+    }
+
+    private CappedBuffer decode(CappedBuffer raw, String encoding, String url) throws IOException {
+        if (encoding.isEmpty()) {
+            return raw;
+        }
+        CappedBuffer decoded = new CappedBuffer(maxBodyBytes, true);
+        try (InputStream in = decoder(raw, encoding)) {
+            byte[] chunk = new byte[8192];
+            int count;
+            while ((count = in.read(chunk)) > 0) {
+                if (!decoded.write(chunk, 0, count)) {
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            // Сжатый поток обрезан по пределу размера: оставляем распакованное начало
+            decoded.truncated = true;
+        } catch (ZipException e) {
+            throw new IOException("Повреждённый ответ (" + encoding + ") " + url + ": " + e.getMessage(), e);
+        }
+        return decoded;
+    }
+
+    private static InputStream decoder(CappedBuffer raw, String encoding) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(raw.data, 0, raw.size);
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(in);
+        }
+        if (encoding.equals("deflate")) {
+            // По стандарту deflate обёрнут в zlib, но часть серверов присылает «голый» поток
+            boolean zlib = raw.size >= 2 && (raw.data[0] & 0x0f) == 8
+                    && ((raw.data[0] & 0xff) << 8 | (raw.data[1] & 0xff)) % 31 == 0;
+            // Свой Inflater InflaterInputStream при закрытии не освобождает
+            Inflater inflater = new Inflater(!zlib);
+            return new InflaterInputStream(in, inflater) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            };
+        }
+        throw new IOException("Неподдерживаемое сжатие ответа: " + encoding);
+    }
+
+    private static String encodingOf(HttpHeaders headers) {
+        String encoding = headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        return encoding.equals("identity") ? "" : encoding;
+    }
+
+    private static boolean isTextual(String contentType) {
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.contains("xml") || type.isEmpty();
+    }
+
+    // Ответ сервера: код, заголовки и (для текстовых типов) распакованное тело
+    public static final class Response {
+        private final int statusCode;
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final long contentHash;
+        private final boolean truncated;
+
+        Response(int statusCode, HttpHeaders headers, byte[] body, long contentHash, boolean truncated) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+            this.contentHash = contentHash;
+            this.truncated = truncated;
+        }
+
+        public int statusCode() {
+            return statusCode;
+        }
+
+        public String header(String name) {
+            return headers.firstValue(name).orElse(null);
+        }
+
+        // Значение Content-Type вместе с параметрами (например, "text/html; charset=UTF-8")
+        public String contentType() {
+            return header("Content-Type");
+        }
+
+        // Кодировка из Content-Type или null
+        public String charset() {
+            String contentType = contentType();
+            if (contentType == null) {
+                return null;
+            }
+            for (String parameter : contentType.split(";")) {
+                String trimmed = parameter.trim();
+                if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                    return trimmed.substring(8).replace("\"", "").trim();
+                }
+            }
+            return null;
+        }
+
+        // Тело ответа или null, если оно не читалось (нетекстовый тип)
+        public byte[] body() {
+            return body;
+        }
+
+        // Отпечаток распакованного тела (см. ContentFingerprint)
+        public long contentHash() {
+            return contentHash;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    private static final class Body {
+        private final CappedBuffer buffer;
+
+        Body(CappedBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    // Накопитель с пределом размера; при необходимости считает отпечаток записанного
+    private static final class CappedBuffer {
+        private final int limit;
+        private final ContentFingerprint fingerprint;
+        private byte[] data = new byte[8192];
+        private int size;
+        private boolean truncated;
+
+        CappedBuffer(int limit, boolean fingerprinted) {
+            this.limit = limit;
+            this.fingerprint = fingerprinted ? new ContentFingerprint() : null;
+        }
+
+        // false, если предел достигнут и остаток отброшен
+        boolean write(byte[] src, int offset, int count) {
+            int accepted = Math.min(count, limit - size);
+            ensureCapacity(size + accepted);
+            System.arraycopy(src, offset, data, size, accepted);
+            update(size, accepted);
+            size += accepted;
+            if (accepted < count) {
+                truncated = true;
+                return false;
+            }
+            return true;
+        }
+
+        boolean write(ByteBuffer src) {
+            int count = src.remaining();
+            int accepted = Math.min(count, limit - size);
+            ensureCapacity(size + accepted);
+            src.get(data, size, accepted);
+            update(size, accepted);
+            size += accepted;
+            if (accepted < count) {
+                truncated = true;
+                return false;
+            }
+            return true;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+
+        private void update(int offset, int count) {
+            if (fingerprint != null && count > 0) {
+                fingerprint.update(data, offset, count);
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > data.length) {
+                data = Arrays.copyOf(data, Math.min(limit, Math.max(capacity, data.length * 2)));
+            }
+        }
+    }
+
+    // Читает тело по одному пакету буферов за раз; по достижении предела отменяет загрузку
+    private static final class CappedSubscriber implements HttpResponse.BodySubscriber<Body> {
+        private final CappedBuffer buffer;
+        private final CompletableFuture<Body> result = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        CappedSubscriber(CappedBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public CompletionStage<Body> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            for (ByteBuffer item : items) {
+                if (!buffer.write(item)) {
+                    subscription.cancel();
+                    result.complete(new Body(buffer));
+                    return;
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(new Body(buffer));
+        }
+    }
+}
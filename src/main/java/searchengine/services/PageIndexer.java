@@ -0,0 +1,353 @@
+package searchengine.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.TextProcessor;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Page;
+import searchengine.util.IntArrayList;
+import searchengine.util.ObjectIntHashMap;
+import searchengine.util.PendingCounter;
+import searchengine.util.TokenOffsets;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Стадия построения индекса: HTML страницы → текст → леммы → ранги.
+ * Работает на собственном пуле потоков, поэтому лемматизация (нагрузка на CPU)
+ * идёт параллельно с обходом (ожидание сети). Строки таблицы index записываются
+ * пакетами, одна транзакция на пакет страниц; id и частоты лемм ведёт LemmaDictionary.
+ */
+@Component
+public class PageIndexer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageIndexer.class);
+
+    private static final String INSERT_INDEX_SQL =
+            "INSERT INTO `index` (page_id, lemma_id, `rank`) VALUES (?, ?, ?)";
+    private static final String UPSERT_PAGE_TEXT_SQL =
+            "INSERT INTO page_text (page_id, title, text, token_offsets) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE title = VALUES(title), text = VALUES(text), token_offsets = VALUES(token_offsets)";
+    private static final String PAGE_RANKS_SQL =
+            "SELECT l.lemma, i.`rank` FROM `index` i JOIN lemma l ON l.id = i.lemma_id WHERE i.page_id = ?";
+    private static final int MAX_TITLE_LENGTH = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SearchIndex searchIndex;
+    private final IndexGeneration indexGeneration;
+    private final LemmaDictionary lemmaDictionary;
+    private final SiteStatistics siteStatistics;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<Integer, PendingCounter> pendingBySite = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, LongAdder> failedBySite = new ConcurrentHashMap<>();
+
+    public PageIndexer(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, CrawlerSettings crawlerSettings,
+                       SearchIndex searchIndex, IndexGeneration indexGeneration, LemmaDictionary lemmaDictionary,
+                       SiteStatistics siteStatistics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.searchIndex = searchIndex;
+        this.indexGeneration = indexGeneration;
+        this.lemmaDictionary = lemmaDictionary;
+        this.siteStatistics = siteStatistics;
+        int threads = Math.max(1, crawlerSettings.getIndexerThreads());
+        AtomicInteger threadNumber = new AtomicInteger();
+        // Когда очередь заполнена, пакет обрабатывает сам поток записи страниц — это притормаживает обход
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, crawlerSettings.getIndexerQueueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "page-indexer-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Асинхронно индексирует пакет уже сохранённых страниц (с заполненным id)
+    public void submit(List<Page> pages) {
+        List<Page> indexable = new ArrayList<>();
+        for (Page page : pages) {
+            if (isIndexable(page)) {
+                indexable.add(page);
+            } else {
+                notifyIndexed(page);
+            }
+        }
+        if (indexable.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> perSite = new HashMap<>();
+        for (Page page : indexable) {
+            perSite.merge(page.getSite().getId(), 1, Integer::sum);
+        }
+        perSite.forEach((siteId, count) -> pendingFor(siteId).add(count));
+        Runnable task = () -> {
+            try {
+                indexPages(indexable);
+                perSite.forEach(siteStatistics::pagesIndexed);
+                indexable.forEach(PageIndexer::notifyIndexed);
+            } catch (RuntimeException e) {
+                // Строки page у страниц есть, а index и page_text нет: обход сайта не должен
+                // завершиться успешно, а URL страниц остаются в журнале необработанными
+                perSite.forEach((siteId, count) ->
+                        failedBySite.computeIfAbsent(siteId, id -> new LongAdder()).add(count));
+                logger.error("Ошибка индексации пакета из {} страниц: {}", indexable.size(), e.getMessage());
+            } finally {
+                perSite.forEach((siteId, count) -> pendingFor(siteId).add(-count));
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            // Пакет не принят: ожидание сайта не должно зависнуть на его страницах
+            perSite.forEach((siteId, count) -> pendingFor(siteId).add(-count));
+            throw e;
+        }
+    }
+
+    // Дожидается индексации всех страниц сайта, переданных на индексацию к этому моменту
+    public void awaitIndexed(int siteId) throws InterruptedException {
+        pendingFor(siteId).awaitZero();
+    }
+
+    // Число страниц сайта, которые не удалось проиндексировать с прошлого вызова; счётчик обнуляется
+    public long takeFailed(int siteId) {
+        LongAdder failed = failedBySite.get(siteId);
+        return failed == null ? 0 : failed.sumThenReset();
+    }
+
+    // Синхронная индексация пакета страниц в текущем потоке
+    public void indexPages(List<Page> pages) {
+        Map<Integer, List<PageLemmas>> bySite = new HashMap<>();
+        for (Page page : pages) {
+            if (page.getId() == null || !isIndexable(page)) {
+                continue;
+            }
+            PageLemmas lemmas = lemmasOf(page);
+            if (!lemmas.lemmas.isEmpty()) {
+                bySite.computeIfAbsent(page.getSite().getId(), id -> new ArrayList<>()).add(lemmas);
+            }
+        }
+        bySite.forEach(this::writeSiteBatch);
+    }
+
+    // Переиндексация одной страницы текущего поколения одной короткой транзакцией: writeRow
+    // записывает строку page (и задаёт id новой страницы), строки index и page_text страницы
+    // заменяются. Частоты меняются только у лемм, которые появились на странице или пропали с неё,
+    // а индекс в памяти — только у лемм с новым или изменившимся рангом
+    public void reindexPage(Page page, Consumer<Page> writeRow) {
+        int siteId = page.getSite().getId();
+        PageLemmas fresh = isIndexable(page) ? lemmasOf(page) : null;
+        ObjectIntHashMap<String> newRanks = fresh != null ? fresh.lemmas : new ObjectIntHashMap<>(4);
+        List<String> newLemmas = new ArrayList<>(newRanks.size());
+        newRanks.forEachKey(newLemmas::add);
+        Map<String, Integer> frequencyDelta = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+        ObjectIntHashMap<String> added = new ObjectIntHashMap<>(Math.max(4, newRanks.size()));
+        Map<String, Integer> lemmaIds;
+        // Пока строки index не зафиксированы, очистка не должна удалить только что созданные леммы
+        Lock usage = lemmaDictionary.usageLock(siteId);
+        usage.lock();
+        try {
+            lemmaIds = lemmaDictionary.resolveIds(siteId, newLemmas);
+            transactionTemplate.executeWithoutResult(status -> {
+                writeRow.accept(page);
+                Map<String, Integer> oldRanks = new HashMap<>();
+                jdbcTemplate.query(PAGE_RANKS_SQL, rs -> {
+                    oldRanks.put(rs.getString(1), (int) rs.getFloat(2));
+                }, page.getId());
+                oldRanks.forEach((lemma, rank) -> {
+                    if (!newRanks.containsKey(lemma)) {
+                        frequencyDelta.put(lemma, -1);
+                        removed.add(lemma);
+                    } else if (newRanks.get(lemma, 0) != rank) {
+                        removed.add(lemma);
+                    }
+                });
+                newRanks.forEach((lemma, rank) -> {
+                    Integer old = oldRanks.get(lemma);
+                    if (old == null) {
+                        frequencyDelta.put(lemma, 1);
+                    }
+                    if (old == null || old != rank) {
+                        added.put(lemma, rank);
+                    }
+                });
+                jdbcTemplate.update("DELETE FROM `index` WHERE page_id = ?", page.getId());
+                if (fresh == null || fresh.lemmas.isEmpty()) {
+                    jdbcTemplate.update("DELETE FROM page_text WHERE page_id = ?", page.getId());
+                } else {
+                    List<Object[]> indexRows = new ArrayList<>(newRanks.size());
+                    newRanks.forEach((lemma, count) -> {
+                        Integer lemmaId = lemmaIds.get(lemma);
+                        if (lemmaId != null) {
+                            indexRows.add(new Object[]{page.getId(), lemmaId, (float) count});
+                        }
+                    });
+                    jdbcTemplate.batchUpdate(INSERT_INDEX_SQL, indexRows);
+                    jdbcTemplate.update(UPSERT_PAGE_TEXT_SQL, page.getId(), fresh.title, fresh.text,
+                            TokenOffsets.encode(offsetsById(fresh, lemmaIds)));
+                }
+                // Частоты меняются в той же транзакции, что и строки index: сбой между ними невозможен,
+                // и обновлённая страница сразу видна поиску с верными частотами
+                lemmaDictionary.writeFrequencies(siteId, frequencyDelta);
+            });
+        } finally {
+            usage.unlock();
+        }
+
+        searchIndex.updatePage(siteId, page.getGeneration(), page.getId(), removed, added, lemmaIds,
+                !newRanks.isEmpty());
+        indexGeneration.bump(siteId);
+        logger.debug("Страница {} переиндексирована: лемм {}, новых {}, пропавших {}, рангов изменилось {}",
+                page.getPath(), newRanks.size(), frequencyDelta.values().stream().filter(d -> d > 0).count(),
+                frequencyDelta.values().stream().filter(d -> d < 0).count(), added.size());
+    }
+
+    // Текст и заголовок обходчик уже извлёк из HTML; иначе Page извлекает их за один проход
+    private PageLemmas lemmasOf(Page page) {
+        String text = page.getText();
+        ObjectIntHashMap<String> lemmas = new ObjectIntHashMap<>(256);
+        Map<String, IntArrayList> offsets = new HashMap<>();
+        TextProcessor.forEachLemma(text, (lemma, start, end) -> {
+            // Такую лемму не сохранить в таблицу lemma, а значит, и не найти
+            if (!LemmaDictionary.fits(lemma)) {
+                return;
+            }
+            lemmas.addTo(lemma, 1);
+            IntArrayList positions = offsets.computeIfAbsent(lemma, l -> new IntArrayList(4));
+            positions.add(start);
+            positions.add(end);
+        });
+        int pageId = page.getId() == null ? 0 : page.getId();
+        return new PageLemmas(pageId, page.getGeneration(), lemmas, truncate(page.getTitle()), text, offsets);
+    }
+
+    private static Map<Integer, IntArrayList> offsetsById(PageLemmas page, Map<String, Integer> lemmaIds) {
+        Map<Integer, IntArrayList> offsetsById = new HashMap<>(page.offsets.size() * 2);
+        page.offsets.forEach((lemma, positions) -> {
+            Integer lemmaId = lemmaIds.get(lemma);
+            if (lemmaId != null) {
+                offsetsById.put(lemmaId, positions);
+            }
+        });
+        return offsetsById;
+    }
+
+    private void writeSiteBatch(int siteId, List<PageLemmas> pages) {
+        // Частота леммы — число страниц пакета, на которых она встречается
+        Map<String, Integer> frequencyDelta = new HashMap<>();
+        for (PageLemmas page : pages) {
+            page.lemmas.forEachKey(lemma -> frequencyDelta.merge(lemma, 1, Integer::sum));
+        }
+        // id лемм берутся из словаря сайта; строки lemma транзакция страниц не трогает
+        Map<String, Integer> lemmaIds;
+        Lock usage = lemmaDictionary.usageLock(siteId);
+        usage.lock();
+        try {
+            lemmaIds = lemmaDictionary.resolveIds(siteId, frequencyDelta.keySet());
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Object[]> indexRows = new ArrayList<>();
+                for (PageLemmas page : pages) {
+                    page.lemmas.forEach((lemma, count) -> {
+                        Integer lemmaId = lemmaIds.get(lemma);
+                        if (lemmaId != null) {
+                            indexRows.add(new Object[]{page.pageId, lemmaId, (float) count});
+                        }
+                    });
+                }
+                jdbcTemplate.batchUpdate(INSERT_INDEX_SQL, indexRows);
+
+                List<Object[]> textRows = new ArrayList<>(pages.size());
+                for (PageLemmas page : pages) {
+                    textRows.add(new Object[]{page.pageId, page.title, page.text,
+                            TokenOffsets.encode(offsetsById(page, lemmaIds))});
+                }
+                jdbcTemplate.batchUpdate(UPSERT_PAGE_TEXT_SQL, textRows);
+            });
+        } finally {
+            usage.unlock();
+        }
+        // Частоты и поисковый индекс в памяти обновляем только после фиксации транзакции
+        lemmaDictionary.addFrequencies(siteId, frequencyDelta);
+        boolean visible = false;
+        for (PageLemmas page : pages) {
+            visible |= searchIndex.addPage(siteId, page.generation, page.pageId, page.lemmas, lemmaIds);
+        }
+        // Страницы теневого поколения поиску не видны, кэш результатов сбрасывать незачем
+        if (visible) {
+            indexGeneration.bump(siteId);
+        }
+        logger.debug("Проиндексировано страниц: {}, лемм: {} (сайт {})", pages.size(), frequencyDelta.size(), siteId);
+    }
+
+    // Сообщает обходчику, что работа над страницей закончена (см. CrawlFrontier.complete)
+    private static void notifyIndexed(Page page) {
+        Runnable onIndexed = page.getOnIndexed();
+        if (onIndexed == null) {
+            return;
+        }
+        page.setOnIndexed(null);
+        try {
+            onIndexed.run();
+        } catch (RuntimeException e) {
+            logger.warn("Ошибка завершения страницы {}: {}", page.getPath(), e.getMessage());
+        }
+    }
+
+    private static String truncate(String title) {
+        return title.length() <= MAX_TITLE_LENGTH ? title : title.substring(0, MAX_TITLE_LENGTH);
+    }
+
+    private boolean isIndexable(Page page) {
+        return page.getCode() >= 200 && page.getCode() < 400
+                && page.getAliasOf() == null
+                && page.getContent() != null
+                && page.getContentType() != null && page.getContentType().contains("text/html");
+    }
+
+    private PendingCounter pendingFor(int siteId) {
+        return pendingBySite.computeIfAbsent(siteId, id -> new PendingCounter());
+    }
+
+    // Леммы одной страницы: лемма → число её вхождений (ранг) и позиции вхождений в тексте
+    private static final class PageLemmas {
+        private final int pageId;
+        private final int generation;
+        private final ObjectIntHashMap<String> lemmas;
+        private final String title;
+        private final String text;
+        private final Map<String, IntArrayList> offsets;
+
+        PageLemmas(int pageId, int generation, ObjectIntHashMap<String> lemmas, String title, String text,
+                   Map<String, IntArrayList> offsets) {
+            this.pageId = pageId;
+            this.generation = generation;
+            this.lemmas = lemmas;
+            this.title = title;
+            this.text = text;
+            this.offsets = offsets;
+        }
+    }
+}
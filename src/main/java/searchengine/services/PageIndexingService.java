@@ -1,9 +1,5 @@
 package searchengine.services;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -12,160 +8,329 @@ import searchengine.config.ConfigSite;
 import searchengine.model.Page;
 import searchengine.model.Site;
 import searchengine.model.IndexingStatus;
-import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
-import org.jsoup.Connection;
+import searchengine.config.CrawlerSettings;
+import searchengine.util.HtmlTextExtractor;
+import searchengine.util.StripedLongHashSet;
+import searchengine.util.UrlFingerprint;
 import org.springframework.beans.factory.annotation.Autowired;
-import java.util.Random;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionSynchronizationManager;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class PageIndexingService {
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    private static final Logger logger = LoggerFactory.getLogger(PageIndexingService.class);
 
     private final SitesList sitesList;
     private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
+    private final CrawlerSettings crawlerSettings;
+    private final PolitenessScheduler politenessScheduler;
+    private final PageBatchWriter pageBatchWriter;
+    private final PageIndexer pageIndexer;
+    private final LemmaDictionary lemmaDictionary;
+    private final SiteGenerations siteGenerations;
+    private final PageFetcher pageFetcher;
+    private final PageRevisions pageRevisions;
+    private final SnippetService snippetService;
+    private final SiteStatistics siteStatistics;
 
     @Autowired
-    public PageIndexingService(SitesList sitesList, SiteRepository siteRepository, PageRepository pageRepository) {
+    public PageIndexingService(SitesList sitesList, SiteRepository siteRepository, CrawlerSettings crawlerSettings,
+                               PolitenessScheduler politenessScheduler, PageBatchWriter pageBatchWriter,
+                               PageIndexer pageIndexer, LemmaDictionary lemmaDictionary,
+                               SiteGenerations siteGenerations, PageFetcher pageFetcher,
+                               PageRevisions pageRevisions, SnippetService snippetService,
+                               SiteStatistics siteStatistics) {
         this.sitesList = sitesList;
         this.siteRepository = siteRepository;
-        this.pageRepository = pageRepository;
+        this.crawlerSettings = crawlerSettings;
+        this.politenessScheduler = politenessScheduler;
+        this.pageBatchWriter = pageBatchWriter;
+        this.pageIndexer = pageIndexer;
+        this.lemmaDictionary = lemmaDictionary;
+        this.siteGenerations = siteGenerations;
+        this.pageFetcher = pageFetcher;
+        this.pageRevisions = pageRevisions;
+        this.snippetService = snippetService;
+        this.siteStatistics = siteStatistics;
     }
 
     // Проверка, входит ли URL в список настроенных сайтов
     public boolean isUrlWithinConfiguredSites(String url) {
+        return configuredSiteOf(url) != null;
+    }
+
+    private ConfigSite configuredSiteOf(String url) {
         List<ConfigSite> sites = sitesList.getSites();
         for (ConfigSite site : sites) {
             if (url.startsWith(site.getUrl())) {
-                return true;
+                return site;
             }
         }
-        return false;
+        return null;
     }
 
-    @Transactional
+    // Обновление одной страницы: загружается только она, её строки page, index и page_text
+    // заменяются одной короткой транзакцией, частоты и индекс в памяти меняются на разницу
+    // между старой и новой версиями; сайт не переобходится
+    public void indexPage(String url) throws Exception {
+        ConfigSite config = configuredSiteOf(url);
+        if (config == null) {
+            throw new Exception("URL не принадлежит к списку настроенных сайтов: " + url);
+        }
+        Site site = siteRepository.findByUrl(config.getUrl());
+        if (site == null) {
+            site = new Site();
+            site.setUrl(config.getUrl());
+            site.setName(config.getName());
+            site.setStatus(IndexingStatus.INDEXED);
+            site.setStatusTime(LocalDateTime.now());
+            site = siteRepository.save(site);
+        }
+
+        politenessScheduler.awaitTurn(url);
+        PageFetcher.Response response = pageFetcher.fetch(url);
+        if (response.statusCode() >= 400) {
+            throw new IOException("Ошибка HTTP " + response.statusCode());
+        }
+        String contentType = response.contentType();
+        if (!isSupportedContentType(url, contentType)) {
+            throw new IOException("Неподдерживаемый тип содержимого: " + contentType);
+        }
+
+        Page page = new Page();
+        page.setSite(site);
+        page.setPath(getPathFromUrl(url));
+        page.setCode(response.statusCode());
+        page.setContentType(contentType);
+        page.setGeneration(site.getActiveGeneration());
+        page.setEtag(response.header("ETag"));
+        page.setLastModified(response.header("Last-Modified"));
+        if (contentType.startsWith("text/html") && response.body() != null) {
+            byte[] body = response.body();
+            String html = new String(body, HtmlTextExtractor.charsetOf(body, response.charset()));
+            HtmlTextExtractor.Result extracted = HtmlTextExtractor.extract(html, url);
+            page.setContent(html);
+            page.setContentHash(response.contentHash());
+            page.setTitle(extracted.getTitle());
+            page.setText(extracted.getText());
+        } else {
+            page.setContent(textOf(response, contentType));
+        }
+
+        // Новая версия занимает строку прежней; лишние строки того же пути удаляются
+        List<Integer> existing = pageRevisions.pageIds(site.getId(), page.getGeneration(), page.getPath());
+        if (!existing.isEmpty()) {
+            page.setId(existing.get(existing.size() - 1));
+            if (existing.size() > 1) {
+                pageRevisions.removePages(site.getId(), existing.subList(0, existing.size() - 1));
+            }
+        }
+        boolean created = page.getId() == null;
+        pageIndexer.reindexPage(page, pageRevisions::writePage);
+        if (created) {
+            siteStatistics.pagesAdded(site.getId(), page.getGeneration(), 1);
+        }
+        snippetService.invalidate(page.getId());
+        logger.info("Страница переиндексирована: {}", url);
+    }
+
+    // Без общей транзакции: страницы записываются пакетами через PageBatchWriter,
+    // каждый пакет фиксируется отдельно, и контекст персистентности не растёт с обходом
     public void indexSite(String baseUrl, int maxDepth) throws Exception {
         // Проверяем, входит ли URL в список настроенных сайтов
         if (!isUrlWithinConfiguredSites(baseUrl)) {
             throw new Exception("URL не принадлежит к списку настроенных сайтов: " + baseUrl);
         }
 
-        // Проверяем, существует ли сайт в базе данных
+        // Проверяем, существует ли сайт в базе данных; его страницы не удаляются, а заменяются
+        // новым поколением, старое поколение удаляется в фоне после переключения
         Site site = siteRepository.findByUrl(baseUrl);
-        if (site != null) {
-            // Удаляем старые данные, если сайт уже существует
-            deleteSiteData(site);
+        if (site == null) {
+            site = new Site();
+            site.setUrl(baseUrl);
+            site.setName(baseUrl); // Можно заменить на реальное имя сайта
         }
-
-        // Создаем новый сайт для индексации
-        site = new Site();
-        site.setUrl(baseUrl);
-        site.setName(baseUrl); // Можно заменить на реальное имя сайта
         site.setStatus(IndexingStatus.INDEXING);
         site.setStatusTime(LocalDateTime.now());
-        siteRepository.save(site);
-
-        Set<String> visitedUrls = new HashSet<>();
-        Queue<UrlDepthPair> queue = new LinkedList<>();
-        queue.add(new UrlDepthPair(baseUrl, 0)); // Начальная пара URL и глубина 0
-
-        Random random = new Random();
-
-        while (!queue.isEmpty()) {
-            UrlDepthPair current = queue.poll();
-            String currentUrl = current.getUrl();
-            int currentDepth = current.getDepth();
-
-            if (visitedUrls.contains(currentUrl) || currentDepth >= maxDepth) {
-                continue;
+        site.setLastError(null);
+        site = siteRepository.save(site);
+        int generation = siteGenerations.begin(site);
+        pageBatchWriter.takeFailed(site.getId());
+        pageIndexer.takeFailed(site.getId());
+        try {
+            crawlSite(site, baseUrl, maxDepth, generation);
+
+            // Завершаем индексацию: все страницы записаны и проиндексированы,
+            // частоты лемм сайта должны быть в базе к моменту смены статуса
+            pageBatchWriter.awaitFlushed(site.getId());
+            pageIndexer.awaitIndexed(site.getId());
+            long failed = pageBatchWriter.takeFailed(site.getId());
+            long unindexed = pageIndexer.takeFailed(site.getId());
+            if (failed > 0 || unindexed > 0) {
+                String error = failed > 0 ? "Не удалось записать в базу страниц: " + failed
+                        : "Не удалось проиндексировать страниц: " + unindexed;
+                site.setStatus(IndexingStatus.FAILED);
+                site.setLastError(error);
+                site.setStatusTime(LocalDateTime.now());
+                siteRepository.save(site);
+                throw new Exception(error);
             }
-            visitedUrls.add(currentUrl);
-
-            try {
-                System.out.println("Обрабатываю страницу на глубине " + currentDepth + ": " + currentUrl);
-
-                // Выполняем запрос к текущей странице
-                Connection.Response response = Jsoup.connect(currentUrl).ignoreContentType(true).execute();
-                String contentType = response.contentType();
+            lemmaDictionary.flush(site.getId());
+            siteGenerations.swap(site);
+            site.setStatus(IndexingStatus.INDEXED);
+            site.setStatusTime(LocalDateTime.now());
+            siteRepository.save(site);
+        } finally {
+            siteGenerations.abandon(site);
+        }
 
-                // Сохраняем страницы HTML и изображения (JPG, PNG и т.д.)
-                if (isSupportedContentType(currentUrl, contentType)) {
-                    savePageContent(response, currentUrl, site);
-                }
+        System.out.println("Индексация сайта завершена: " + baseUrl);
+    }
 
-                // Извлекаем ссылки только для HTML-страниц
-                if (contentType != null && contentType.startsWith("text/html")) {
-                    Document document = response.parse();
-                    Elements links = document.select("a[href]");
-                    for (Element link : links) {
-                        String absUrl = link.attr("abs:href");
-                        if (absUrl.startsWith(baseUrl) && !visitedUrls.contains(absUrl)) {
-                            queue.add(new UrlDepthPair(absUrl, currentDepth + 1)); // Увеличиваем глубину
+    // Обход в ширину по уровням: URL встречается в очереди один раз (проверка при постановке,
+    // по 64-битному отпечатку), глубина — номер уровня, а не поле каждого элемента очереди.
+    // Очередь ограничена frontier-capacity: лишние ссылки отбрасываются, а не копятся в памяти
+    private void crawlSite(Site site, String baseUrl, int maxDepth, int generation) throws InterruptedException {
+        int capacity = Math.max(1, crawlerSettings.getFrontierCapacity());
+        int statusEvery = Math.max(1, crawlerSettings.getPageBatchSize());
+        StripedLongHashSet seen = new StripedLongHashSet(16, 1024);
+        StripedLongHashSet storedPaths = new StripedLongHashSet(16, 1024);
+        ArrayDeque<String> level = new ArrayDeque<>();
+        ArrayDeque<String> nextLevel = new ArrayDeque<>();
+        seen.add(UrlFingerprint.of(baseUrl));
+        level.add(baseUrl);
+        long processed = 0;
+        long dropped = 0;
+        // Очереди уровней читает только этот поток; прогрессу отдаётся их суммарный размер
+        AtomicInteger queued = new AtomicInteger(1);
+        siteStatistics.crawlStarted(site.getId(), queued::get);
+        try {
+            for (int depth = 0; depth < maxDepth && !level.isEmpty(); depth++) {
+                boolean lastLevel = depth + 1 >= maxDepth;
+                String currentUrl;
+                while ((currentUrl = level.poll()) != null) {
+                    List<String> links = crawlPage(site, currentUrl, depth, generation, storedPaths);
+                    if (!lastLevel) {
+                        for (String absUrl : links) {
+                            if (!absUrl.startsWith(baseUrl)) {
+                                continue;
+                            }
+                            long fingerprint = UrlFingerprint.of(absUrl);
+                            if (seen.contains(fingerprint)) {
+                                continue;
+                            }
+                            if (level.size() + nextLevel.size() >= capacity) {
+                                dropped++;
+                                continue;
+                            }
+                            seen.add(fingerprint);
+                            nextLevel.add(absUrl);
                         }
                     }
-                }
 
-                // Добавляем случайную задержку между запросами (от 0,5 до 5 секунд)
-                int delay = random.nextInt(4500) + 500; // Генерирует значение от 500 до 5000 миллисекунд
-                System.out.println("Задержка перед следующим запросом: " + delay + " миллисекунд.");
-                Thread.sleep(delay);
+                    queued.set(level.size() + nextLevel.size());
 
-            } catch (IOException e) {
-                System.err.println("Ошибка загрузки страницы: " + currentUrl + " - " + e.getMessage());
+                    // Время статуса обновляется раз в пакет страниц, а не после каждой страницы
+                    if (++processed % statusEvery == 0) {
+                        site.setStatusTime(LocalDateTime.now());
+                        siteRepository.save(site);
+                    }
+                }
+                ArrayDeque<String> done = level;
+                level = nextLevel;
+                nextLevel = done;
             }
-
-            // Обновляем статус времени после обработки каждой страницы (даже если страница не была успешно загружена)
-            site.setStatusTime(LocalDateTime.now());
-            siteRepository.save(site);
-            System.out.println("Обновление времени в базе данных: " + LocalDateTime.now()); // Логирование обновления времени
+        } finally {
+            siteStatistics.crawlFinished(site.getId());
+        }
+        if (dropped > 0) {
+            logger.warn("Очередь обхода сайта {} переполнена, пропущено ссылок: {}", site.getUrl(), dropped);
         }
-
-        // Завершаем индексацию
-        site.setStatus(IndexingStatus.INDEXED);
         site.setStatusTime(LocalDateTime.now());
         siteRepository.save(site);
-
-        System.out.println("Индексация сайта завершена: " + baseUrl);
     }
 
-    private void savePageContent(Connection.Response response, String url, Site site) {
+    // Загружает и сохраняет одну страницу; возвращает её ссылки (пустой список для не-HTML и ошибок)
+    private List<String> crawlPage(Site site, String currentUrl, int depth, int generation,
+                                   StripedLongHashSet storedPaths) throws InterruptedException {
         try {
-            String content = response.body();
+            System.out.println("Обрабатываю страницу на глубине " + depth + ": " + currentUrl);
+
+            // Дожидаемся очереди хоста вместо случайной задержки
+            politenessScheduler.awaitTurn(currentUrl);
+
+            // Выполняем запрос к текущей странице
+            PageFetcher.Response response = pageFetcher.fetch(currentUrl);
+            if (response.statusCode() >= 400) {
+                throw new IOException("Ошибка HTTP " + response.statusCode());
+            }
+            siteStatistics.pageFetched(site.getId());
             String contentType = response.contentType();
-            String path = getPathFromUrl(url);
-            int statusCode = response.statusCode();
-
-            // Проверка, существует ли уже такая страница для данного сайта
-            Optional<Page> existingPage = pageRepository.findBySiteAndPath(site, path);
-            if (existingPage.isPresent()) {
-                System.out.println("Страница уже существует: " + url);
-                return; // Не сохраняем, если такая страница уже есть
+
+            // HTML разбирается один раз: текст, заголовок и ссылки извлекаются за один проход
+            String html = null;
+            HtmlTextExtractor.Result extracted = null;
+            if (contentType != null && contentType.startsWith("text/html") && response.body() != null) {
+                byte[] body = response.body();
+                html = new String(body, HtmlTextExtractor.charsetOf(body, response.charset()));
+                extracted = HtmlTextExtractor.extract(html, currentUrl);
             }
 
-            Page page = new Page();
-            page.setSite(site);
-            page.setPath(path);
-            page.setCode(statusCode);
-            page.setContent(content);
-            page.setContentType(contentType);
+            // Сохраняем страницы HTML и изображения (JPG, PNG и т.д.)
+            if (isSupportedContentType(currentUrl, contentType)) {
+                savePageContent(response, currentUrl, site, generation, html, extracted, storedPaths);
+            }
+            return extracted != null ? extracted.getLinks() : List.of();
+        } catch (IOException e) {
+            System.err.println("Ошибка загрузки страницы: " + currentUrl + " - " + e.getMessage());
+            siteStatistics.fetchFailed(site.getId());
+            return List.of();
+        }
+    }
 
-            pageRepository.save(page);
-            System.out.println("Сохранено содержимое: " + url);
-        } catch (Exception e) {
-            System.err.println("Ошибка сохранения содержимого: " + url + " - " + e.getMessage());
+    private void savePageContent(PageFetcher.Response response, String url, Site site, int generation,
+                                 String html, HtmlTextExtractor.Result extracted,
+                                 StripedLongHashSet storedPaths) throws InterruptedException {
+        String contentType = response.contentType();
+        String path = getPathFromUrl(url);
+
+        // Путь уже сохранён в строящемся поколении (другой URL с тем же path) — проверка без запроса к базе
+        if (!storedPaths.add(UrlFingerprint.hash(path))) {
+            System.out.println("Страница уже существует: " + url);
+            return;
         }
+
+        Page page = new Page();
+        page.setSite(site);
+        page.setPath(path);
+        page.setCode(response.statusCode());
+        page.setContent(html != null ? html : textOf(response, contentType));
+        page.setContentType(contentType);
+        page.setGeneration(generation);
+        if (extracted != null) {
+            page.setTitle(extracted.getTitle());
+            page.setText(extracted.getText());
+        }
+
+        // Запись и индексация идут пакетами в фоне; при заполненной очереди обход ждёт
+        pageBatchWriter.submit(page);
+        System.out.println("Сохранено содержимое: " + url);
     }
 
+    // Тело нетекстовых ответов (изображений) не загружается, сохраняется только его тип
+    private String textOf(PageFetcher.Response response, String contentType) {
+        byte[] body = response.body();
+        if (body == null) {
+            return "Image content: " + contentType;
+        }
+        return new String(body, HtmlTextExtractor.charsetOf(body, response.charset()));
+    }
 
     private boolean isSupportedContentType(String url, String contentType) {
         if (contentType == null) return false;
@@ -199,52 +364,4 @@ public class PageIndexingService {
             return "/";
         }
     }
-
-    // Класс для хранения URL и глубины
-    private static class UrlDepthPair {
-        private final String url;
-        private final int depth;
-
-        public UrlDepthPair(String url, int depth) {
-            this.url = url;
-            this.depth = depth;
-        }
-
-        public String getUrl() {
-            return url;
-        }
-
-        public int getDepth() {
-            return depth;
-        }
-    }
-
-    @Transactional
-    private void deleteSiteData(Site site) {
-        if (site != null) {
-            boolean isActive = TransactionSynchronizationManager.isActualTransactionActive();
-            System.out.println("Транзакция активна: " + isActive);
-
-            // Подсчёт страниц перед удалением
-            long pagesCount = pageRepository.countBySite(site);
-            System.out.println("Удаляется " + pagesCount + " страниц с сайта: " + site.getUrl());
-
-            // Удаляем страницы с использованием каскадного удаления, если это настроено
-            pageRepository.deleteAllBySite(site);
-
-            // Логируем информацию
-            System.out.println("Удалены страницы для сайта: " + site.getUrl());
-
-            // Удаляем сайт
-            siteRepository.delete(site);
-            entityManager.flush(); // Является обязательным для очистки всех каскадных операций
-
-            // Detach the site entity explicitly
-            entityManager.detach(site);
-
-            // Логирование
-            System.out.println("Удалён сайт с URL: " + site.getUrl());
-        }
-    }
-
 }
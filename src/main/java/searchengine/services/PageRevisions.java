@@ -0,0 +1,246 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Page;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Types;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Повторный обход сайта без удаления его данных. Загружает сохранённые страницы
+ * с валидаторами ответа, обновляет валидаторы у неизменившихся страниц и убирает
+ * устаревшие версии изменившихся и исчезнувших страниц: строки index, page_text,
+ * page_content и page, их вклад в частоты лемм и в поисковый индекс в памяти.
+ * Устаревшие страницы копятся и удаляются пакетами, чтобы списки вхождений частых
+ * лемм не пересобирались на каждую изменившуюся страницу.
+ */
+@Component
+public class PageRevisions {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageRevisions.class);
+
+    private static final String LOAD_SQL =
+            "SELECT id, path, etag, last_modified, content_hash, alias_of FROM page WHERE site_id = ? AND generation = ?";
+    private static final String UPDATE_VALIDATORS_SQL =
+            "UPDATE page SET etag = ?, last_modified = ? WHERE id = ?";
+    private static final String UPDATE_PAGE_SQL =
+            "UPDATE page SET code = ?, content = ?, content_type = ?, content_hash = ?, alias_of = NULL, etag = ?, " +
+            "last_modified = ? WHERE id = ?";
+    private static final String INSERT_PAGE_SQL =
+            "INSERT INTO page (code, content, content_type, content_hash, etag, last_modified, site_id, path, generation) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String DUPLICATES_SQL =
+            "SELECT DISTINCT p.id FROM page p JOIN page n ON n.path = p.path AND n.site_id = p.site_id " +
+            "AND n.generation = p.generation AND n.id > p.id WHERE p.site_id = ? AND p.generation = ?";
+    private static final int DELETE_CHUNK = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LemmaDictionary lemmaDictionary;
+    private final SearchIndex searchIndex;
+    private final IndexGeneration indexGeneration;
+    private final PageContentStore contentStore;
+    private final SiteStatistics siteStatistics;
+    private final int retireBatchSize;
+    private final ConcurrentHashMap<Integer, List<Integer>> retiredBySite = new ConcurrentHashMap<>();
+
+    public PageRevisions(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                         LemmaDictionary lemmaDictionary, SearchIndex searchIndex, IndexGeneration indexGeneration,
+                         PageContentStore contentStore, SiteStatistics siteStatistics,
+                         CrawlerSettings crawlerSettings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.lemmaDictionary = lemmaDictionary;
+        this.searchIndex = searchIndex;
+        this.indexGeneration = indexGeneration;
+        this.contentStore = contentStore;
+        this.siteStatistics = siteStatistics;
+        this.retireBatchSize = Math.max(1, crawlerSettings.getPageBatchSize());
+    }
+
+    // Страницы текущего поколения сайта, сохранённые прошлым обходом (без содержимого)
+    public KnownPages load(int siteId, int generation) {
+        Map<String, KnownPages.Entry> byPath = new HashMap<>();
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            long hash = rs.getLong("content_hash");
+            Long contentHash = rs.wasNull() ? null : hash;
+            byPath.put(rs.getString("path"), new KnownPages.Entry(rs.getInt("id"), rs.getString("etag"),
+                    rs.getString("last_modified"), contentHash, rs.getString("alias_of")));
+        }, siteId, generation);
+        logger.info("Загружено {} страниц прошлого обхода сайта {}", byPath.size(), siteId);
+        return new KnownPages(byPath);
+    }
+
+    // Прерванный обход мог записать страницу дважды (URL, не отмеченный в журнале обработанным,
+    // загружается снова) или не успеть удалить прошлую версию; остаётся самая новая строка пути.
+    // visible — поколение обслуживает поиск, и страницы убираются и из индекса в памяти
+    public int removeDuplicates(int siteId, int generation, boolean visible) {
+        List<Integer> ids = jdbcTemplate.queryForList(DUPLICATES_SQL, Integer.class, siteId, generation);
+        if (visible) {
+            removePages(siteId, ids);
+        } else {
+            for (int from = 0; from < ids.size(); from += DELETE_CHUNK) {
+                purgePages(siteId, ids.subList(from, Math.min(ids.size(), from + DELETE_CHUNK)));
+            }
+        }
+        if (!ids.isEmpty()) {
+            logger.info("Удалено повторных версий страниц: {} (сайт {}, поколение {})", ids.size(), siteId, generation);
+        }
+        return ids.size();
+    }
+
+    // id строк страницы с путём path в поколении сайта, по возрастанию
+    public List<Integer> pageIds(int siteId, int generation, String path) {
+        return jdbcTemplate.queryForList("SELECT id FROM page WHERE site_id = ? AND generation = ? AND path = ? ORDER BY id",
+                Integer.class, siteId, generation, path);
+    }
+
+    // Неизменившаяся страница: сохраняем новые валидаторы, если сервер их сменил
+    public void updateValidators(KnownPages.Entry entry, String etag, String lastModified) {
+        if ((etag == null || etag.equals(entry.getEtag()))
+                && (lastModified == null || lastModified.equals(entry.getLastModified()))) {
+            return;
+        }
+        jdbcTemplate.update(UPDATE_VALIDATORS_SQL,
+                etag != null ? etag : entry.getEtag(),
+                lastModified != null ? lastModified : entry.getLastModified(),
+                entry.getId());
+    }
+
+    // Записывает новую версию страницы на место прежней (тот же id) или новой строкой, если страницы
+    // ещё не было; вызывается внутри транзакции переиндексации страницы
+    public void writePage(Page page) {
+        int siteId = page.getSite().getId();
+        if (page.getId() != null) {
+            jdbcTemplate.update(UPDATE_PAGE_SQL, page.getCode(), contentStore.pageColumnValue(page),
+                    page.getContentType(), page.getContentHash(), page.getEtag(), page.getLastModified(), page.getId());
+        } else {
+            KeyHolder keys = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(INSERT_PAGE_SQL, Statement.RETURN_GENERATED_KEYS);
+                statement.setInt(1, page.getCode());
+                statement.setString(2, contentStore.pageColumnValue(page));
+                statement.setString(3, page.getContentType());
+                statement.setObject(4, page.getContentHash(), Types.BIGINT);
+                statement.setString(5, page.getEtag());
+                statement.setString(6, page.getLastModified());
+                statement.setInt(7, siteId);
+                statement.setString(8, page.getPath());
+                statement.setInt(9, page.getGeneration());
+                return statement;
+            }, keys);
+            page.setId(keys.getKey().intValue());
+        }
+        contentStore.replaceContent(siteId, page.getId(), page.getContent());
+    }
+
+    // Сохранённый HTML страницы (для ссылок страницы, ответившей 304); null, если его нет
+    public String storedContent(int pageId) {
+        return contentStore.load(List.of(pageId)).get(pageId);
+    }
+
+    // Откладывает удаление прошлой версии изменившейся страницы; новая версия сохраняется
+    // под новым id, поэтому старая может пожить в индексе до удаления пакета
+    public void retire(int siteId, int pageId) {
+        List<Integer> batch = null;
+        List<Integer> retired = retiredBySite.computeIfAbsent(siteId, id -> new ArrayList<>());
+        synchronized (retired) {
+            retired.add(pageId);
+            if (retired.size() >= retireBatchSize) {
+                batch = new ArrayList<>(retired);
+                retired.clear();
+            }
+        }
+        if (batch != null) {
+            removePages(siteId, batch);
+        }
+    }
+
+    // Удаляет накопленные устаревшие версии страниц сайта
+    public void flush(int siteId) {
+        List<Integer> retired = retiredBySite.get(siteId);
+        if (retired == null) {
+            return;
+        }
+        List<Integer> batch;
+        synchronized (retired) {
+            batch = new ArrayList<>(retired);
+            retired.clear();
+        }
+        removePages(siteId, batch);
+    }
+
+    // Удаляет страницы сайта вместе с их строками index, текстом и содержимым;
+    // частоты лемм уменьшаются на число удалённых страниц с леммой
+    public void removePages(int siteId, Collection<Integer> pageIds) {
+        List<Integer> ids = new ArrayList<>(pageIds);
+        for (int from = 0; from < ids.size(); from += DELETE_CHUNK) {
+            removeChunk(siteId, ids.subList(from, Math.min(ids.size(), from + DELETE_CHUNK)));
+        }
+    }
+
+    // Удаляет строки страниц, которых нет в поисковом индексе в памяти (чужое поколение сайта)
+    public void purgePages(int siteId, List<Integer> pageIds) {
+        if (pageIds.isEmpty()) {
+            return;
+        }
+        lemmaDictionary.addFrequencies(siteId, deleteRows(siteId, pageIds));
+    }
+
+    private void removeChunk(int siteId, List<Integer> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> frequencyDelta = deleteRows(siteId, chunk);
+        // Частоты и поисковый индекс в памяти меняем только после фиксации удаления
+        lemmaDictionary.addFrequencies(siteId, frequencyDelta);
+        Set<Integer> removed = new HashSet<>(chunk);
+        searchIndex.removePages(siteId, frequencyDelta.keySet(), removed);
+        indexGeneration.bump(siteId);
+        logger.debug("Удалено устаревших страниц: {}, затронуто лемм: {} (сайт {})",
+                chunk.size(), frequencyDelta.size(), siteId);
+    }
+
+    // Удаляет строки index, page_text, page_content и page одной транзакцией;
+    // возвращает уменьшение частот лемм
+    private Map<String, Integer> deleteRows(int siteId, List<Integer> chunk) {
+        String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+        Object[] args = chunk.toArray();
+        Map<String, Integer> frequencyDelta = new HashMap<>();
+        Map<Integer, Integer> deletedByGeneration = new HashMap<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.query("SELECT generation, COUNT(*) FROM page WHERE id IN (" + placeholders + ") "
+                    + "GROUP BY generation", rs -> {
+                deletedByGeneration.put(rs.getInt(1), rs.getInt(2));
+            }, args);
+            jdbcTemplate.query("SELECT l.lemma, COUNT(*) FROM `index` i JOIN lemma l ON l.id = i.lemma_id "
+                    + "WHERE i.page_id IN (" + placeholders + ") GROUP BY l.lemma", rs -> {
+                frequencyDelta.put(rs.getString(1), -rs.getInt(2));
+            }, args);
+            jdbcTemplate.update("DELETE FROM `index` WHERE page_id IN (" + placeholders + ")", args);
+            jdbcTemplate.update("DELETE FROM page_text WHERE page_id IN (" + placeholders + ")", args);
+            jdbcTemplate.update("DELETE FROM page_content WHERE page_id IN (" + placeholders + ")", args);
+            jdbcTemplate.update("DELETE FROM page WHERE id IN (" + placeholders + ")", args);
+        });
+        deletedByGeneration.forEach((generation, count) -> siteStatistics.pagesRemoved(siteId, generation, count));
+        return frequencyDelta;
+    }
+}
@@ -0,0 +1,210 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import searchengine.config.ConfigSite;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.SitesList;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Планировщик вежливого обхода: для каждого хоста хранится token bucket
+ * (в форме GCRA — «теоретическое время следующего запроса»).
+ * Частота берётся из настроек сайта или crawler-settings и ограничивается
+ * директивой Crawl-delay из robots.txt.
+ */
+@Component
+public class PolitenessScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PolitenessScheduler.class);
+
+    private final CrawlerSettings crawlerSettings;
+    private final SitesList sitesList;
+    private final PageFetcher pageFetcher;
+    private final ConcurrentHashMap<String, HostBucket> buckets = new ConcurrentHashMap<>();
+
+    public PolitenessScheduler(CrawlerSettings crawlerSettings, SitesList sitesList, PageFetcher pageFetcher) {
+        this.crawlerSettings = crawlerSettings;
+        this.sitesList = sitesList;
+        this.pageFetcher = pageFetcher;
+    }
+
+    // Резервирует ближайший допустимый слот для запроса к хосту URL
+    // и возвращает, сколько наносекунд осталось до него (0 — можно сразу)
+    public long reserve(String url) {
+        return bucketFor(url).reserve(System.nanoTime());
+    }
+
+    // Дожидается зарезервированного слота; в виртуальном потоке ожидание не занимает поток-носитель
+    public void awaitTurn(String url) throws InterruptedException {
+        long waitNanos = reserve(url);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private HostBucket bucketFor(String url) {
+        String host = VirtualThreadCrawlEngine.hostOf(url);
+        HostBucket bucket = buckets.get(host);
+        if (bucket != null) {
+            return bucket;
+        }
+        // robots.txt читаем вне computeIfAbsent, чтобы сетевой запрос не держал блокировку карты
+        HostBucket created = createBucket(host, url);
+        HostBucket existing = buckets.putIfAbsent(host, created);
+        return existing != null ? existing : created;
+    }
+
+    private HostBucket createBucket(String host, String url) {
+        double rps = requestsPerSecondFor(host);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rps);
+        if (crawlerSettings.isRespectCrawlDelay()) {
+            double crawlDelay = fetchCrawlDelay(url);
+            if (crawlDelay > 0) {
+                // Чрезмерный Crawl-delay остановил бы обход хоста; ограничиваем его сверху
+                long delayNanos = Math.min((long) (crawlDelay * TimeUnit.SECONDS.toNanos(1)),
+                        TimeUnit.MILLISECONDS.toNanos(crawlerSettings.getMaxCrawlDelayMs()));
+                intervalNanos = Math.max(intervalNanos, delayNanos);
+            }
+        }
+        int burst = Math.max(1, crawlerSettings.getBurst());
+        logger.info("Хост {}: не чаще одного запроса в {} ms, всплеск до {}",
+                host, TimeUnit.NANOSECONDS.toMillis(intervalNanos), burst);
+        return new HostBucket(intervalNanos, burst);
+    }
+
+    private double requestsPerSecondFor(String host) {
+        List<ConfigSite> sites = sitesList.getSites();
+        if (sites != null) {
+            for (ConfigSite site : sites) {
+                if (site.getRequestsPerSecond() != null && site.getRequestsPerSecond() > 0
+                        && host.equals(VirtualThreadCrawlEngine.hostOf(site.getUrl()))) {
+                    return site.getRequestsPerSecond();
+                }
+            }
+        }
+        return crawlerSettings.getRequestsPerSecond() > 0 ? crawlerSettings.getRequestsPerSecond() : 1.0;
+    }
+
+    // Читает Crawl-delay (в секундах) для нашего агента или для "*"; 0 — если директивы нет
+    private double fetchCrawlDelay(String url) {
+        try {
+            URI uri = URI.create(url);
+            String robotsUrl = uri.getScheme() + "://" + uri.getRawAuthority() + "/robots.txt";
+            PageFetcher.Response response = pageFetcher.fetch(robotsUrl);
+            if (response.statusCode() != 200 || response.body() == null) {
+                return 0;
+            }
+            return parseCrawlDelay(new String(response.body(), StandardCharsets.UTF_8),
+                    agentToken(crawlerSettings.getUserAgent()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (Exception e) {
+            logger.debug("Не удалось прочитать robots.txt для {}: {}", url, e.getMessage());
+            return 0;
+        }
+    }
+
+    // Токен продукта из заголовка User-Agent ("Mozilla/5.0 (...)" → "mozilla"), с которым
+    // сравниваются строки User-agent в robots.txt
+    static String agentToken(String userAgent) {
+        if (userAgent == null) {
+            return "";
+        }
+        String token = userAgent.trim();
+        int end = 0;
+        while (end < token.length() && token.charAt(end) != '/' && !Character.isWhitespace(token.charAt(end))) {
+            end++;
+        }
+        return token.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    // Группа с User-agent, совпадающим с токеном агента, важнее группы "*": если такая группа
+    // есть, Crawl-delay берётся только из неё
+    static double parseCrawlDelay(String robots, String agent) {
+        double ownDelay = 0;
+        double anyDelay = 0;
+        boolean ownGroupFound = false;
+        boolean appliesToUs = false;
+        boolean appliesToAny = false;
+        boolean inAgentLines = false;
+        for (String rawLine : robots.split("\n")) {
+            String line = rawLine;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (field.equals("user-agent")) {
+                // Несколько строк User-agent подряд относятся к одной группе
+                if (!inAgentLines) {
+                    appliesToUs = false;
+                    appliesToAny = false;
+                }
+                inAgentLines = true;
+                String group = value.toLowerCase(Locale.ROOT);
+                if (!agent.isEmpty() && group.equals(agent)) {
+                    appliesToUs = true;
+                    ownGroupFound = true;
+                }
+                appliesToAny |= group.equals("*");
+                continue;
+            }
+            inAgentLines = false;
+            if ((appliesToUs || appliesToAny) && field.equals("crawl-delay")) {
+                double delay;
+                try {
+                    delay = Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (!(delay > 0) || Double.isInfinite(delay)) {
+                    continue;
+                }
+                if (appliesToUs) {
+                    ownDelay = Math.max(ownDelay, delay);
+                }
+                if (appliesToAny) {
+                    anyDelay = Math.max(anyDelay, delay);
+                }
+            }
+        }
+        return ownGroupFound ? ownDelay : anyDelay;
+    }
+
+    /**
+     * Token bucket хоста. theoreticalArrival — момент, когда ведро снова было бы
+     * полным; запрос допустим, если до него осталось не больше (burst - 1) интервалов.
+     */
+    private static final class HostBucket {
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private long theoreticalArrival;
+
+        HostBucket(long intervalNanos, int burst) {
+            this.intervalNanos = intervalNanos;
+            this.toleranceNanos = intervalNanos * (burst - 1);
+            this.theoreticalArrival = System.nanoTime();
+        }
+
+        synchronized long reserve(long now) {
+            long tat = Math.max(theoreticalArrival, now);
+            long eligible = tat - toleranceNanos;
+            theoreticalArrival = tat + intervalNanos;
+            return Math.max(0, eligible - now);
+        }
+    }
+}
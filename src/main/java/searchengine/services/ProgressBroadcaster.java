@@ -0,0 +1,275 @@
+package searchengine.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import searchengine.config.ConfigSite;
+import searchengine.config.SitesList;
+import searchengine.config.StatisticsSettings;
+import searchengine.dto.statistics.ProgressUpdate;
+import searchengine.dto.statistics.SiteProgress;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Один общий рассыльщик прогресса индексации по Server-Sent Events. Раз в интервал
+ * он снимает состояние сайтов из SiteStatistics, оставляет только изменившиеся сайты
+ * и рассылает их одним событием "progress", сериализованным один раз на всех
+ * подписчиков; всё, что накопилось за интервал, сливается в это событие. Новый
+ * подписчик сначала получает событие "snapshot" со всеми сайтами. Поток рассылки
+ * только ставит готовое событие в очередь каждого подписчика (не больше
+ * streamBacklog событий), а в соединение его пишет отдельный виртуальный поток
+ * подписчика, поэтому медленный клиент не задерживает остальных. Подписчик, чья
+ * очередь переполнена, отключается: панель переподключится и получит свежий снимок.
+ * Снимок и изменения ставятся в очередь одним потоком и приходят по порядку.
+ */
+@Component
+public class ProgressBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProgressBroadcaster.class);
+
+    private final SitesList sitesList;
+    private final SiteStatistics siteStatistics;
+    private final IndexingService indexingService;
+    private final ObjectMapper objectMapper;
+    private final long intervalMs;
+    private final long heartbeatMs;
+    private final long timeoutMs;
+    private final int backlog;
+    private final CopyOnWriteArraySet<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService broadcaster = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "progress-broadcaster");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Состояние последней рассылки; меняется только потоком рассылки
+    private final Map<String, SiteProgress> lastSent = new HashMap<>();
+    private final Map<String, Long> lastFetched = new HashMap<>();
+    private boolean lastIndexing;
+    private long lastTickNanos;
+    private long lastEventMillis;
+
+    public ProgressBroadcaster(SitesList sitesList, SiteStatistics siteStatistics, IndexingService indexingService,
+                               ObjectMapper objectMapper, StatisticsSettings statisticsSettings) {
+        this.sitesList = sitesList;
+        this.siteStatistics = siteStatistics;
+        this.indexingService = indexingService;
+        this.objectMapper = objectMapper;
+        this.intervalMs = Math.max(100, statisticsSettings.getStreamIntervalMs());
+        this.heartbeatMs = Math.max(intervalMs, statisticsSettings.getStreamHeartbeatMs());
+        this.timeoutMs = statisticsSettings.getStreamTimeoutMs();
+        this.backlog = Math.max(1, statisticsSettings.getStreamBacklog());
+        this.lastTickNanos = System.nanoTime();
+        broadcaster.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        broadcaster.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+        sender.shutdownNow();
+    }
+
+    // Новая подписка; снимок ей ставит в очередь поток рассылки, чтобы он не разошёлся с изменениями
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, backlog);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+        try {
+            broadcaster.execute(() -> {
+                ProgressUpdate snapshot = new ProgressUpdate();
+                snapshot.setIndexing(lastIndexing);
+                snapshot.setSites(new ArrayList<>(lastSent.values()));
+                String json = toJson(snapshot);
+                if (json == null) {
+                    emitter.complete();
+                    return;
+                }
+                subscribers.add(subscriber);
+                enqueue(subscriber, SseEmitter.event().name("snapshot").data(json, MediaType.APPLICATION_JSON));
+            });
+        } catch (RejectedExecutionException e) {
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            double seconds = Math.max(1e-3, (now - lastTickNanos) / 1e9);
+            lastTickNanos = now;
+            boolean indexing = indexingService.isIndexingInProgress();
+            List<SiteProgress> changed = new ArrayList<>();
+            for (ConfigSite site : sitesList.getSites()) {
+                SiteProgress progress = progressOf(site, seconds);
+                if (!progress.equals(lastSent.get(site.getUrl()))) {
+                    lastSent.put(site.getUrl(), progress);
+                    changed.add(progress);
+                }
+            }
+            if (subscribers.isEmpty()) {
+                lastIndexing = indexing;
+                return;
+            }
+            if (changed.isEmpty() && indexing == lastIndexing) {
+                heartbeat();
+                return;
+            }
+            lastIndexing = indexing;
+            ProgressUpdate update = new ProgressUpdate();
+            update.setIndexing(indexing);
+            update.setSites(changed);
+            String json = toJson(update);
+            if (json != null) {
+                broadcast(json);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Ошибка рассылки прогресса индексации: {}", e.getMessage());
+        }
+    }
+
+    private SiteProgress progressOf(ConfigSite site, double seconds) {
+        SiteProgress progress = new SiteProgress();
+        progress.setUrl(site.getUrl());
+        progress.setName(site.getName());
+        SiteStatistics.SiteState state = siteStatistics.site(site.getUrl());
+        if (state == null) {
+            progress.setStatus("");
+            progress.setError("");
+            return progress;
+        }
+        int siteId = state.getId();
+        long fetched = siteStatistics.fetched(siteId);
+        Long previous = lastFetched.put(site.getUrl(), fetched);
+        progress.setStatus(state.getStatus());
+        progress.setStatusTime(state.getStatusTime());
+        progress.setError(state.getLastError() == null ? "" : state.getLastError());
+        progress.setPages(siteStatistics.pages(state));
+        progress.setLemmas(siteStatistics.lemmas(state));
+        progress.setFetched(fetched);
+        progress.setFailed(siteStatistics.failed(siteId));
+        progress.setIndexed(siteStatistics.indexed(siteId));
+        progress.setQueueDepth(siteStatistics.queueDepth(siteId));
+        // Округление до десятых: иначе скорость менялась бы в каждом событии из-за дрожания интервала
+        double rate = previous == null ? 0 : (fetched - previous) / seconds;
+        progress.setFetchRate(Math.round(rate * 10) / 10.0);
+        return progress;
+    }
+
+    private void broadcast(String json) {
+        lastEventMillis = System.currentTimeMillis();
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, SseEmitter.event().name("progress").data(json, MediaType.APPLICATION_JSON));
+        }
+    }
+
+    // Комментарий в затишье: прокси не закрывают соединение, а отключившиеся подписчики отсеиваются
+    private void heartbeat() {
+        if (System.currentTimeMillis() - lastEventMillis < heartbeatMs) {
+            return;
+        }
+        lastEventMillis = System.currentTimeMillis();
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, SseEmitter.event().comment("ping"));
+        }
+    }
+
+    // Вызывается только потоком рассылки; сама запись в соединение идёт в потоке подписчика
+    private void enqueue(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        if (!subscriber.backlog.offer(event)) {
+            logger.info("Подписчик прогресса отстал на {} событий и отключён", backlog);
+            disconnect(subscriber);
+            return;
+        }
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                sender.execute(() -> drain(subscriber));
+            } catch (RejectedExecutionException e) {
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    // Отправляет очередь подписчика по порядку; одновременно работает не больше одного такого потока
+    private void drain(Subscriber subscriber) {
+        do {
+            SseEmitter.SseEventBuilder event;
+            while ((event = subscriber.backlog.poll()) != null) {
+                if (!send(subscriber.emitter, event)) {
+                    disconnect(subscriber);
+                    return;
+                }
+            }
+            subscriber.draining.set(false);
+            // Событие могло прийти между последним poll и сбросом флага
+        } while (!subscriber.backlog.isEmpty() && subscriber.draining.compareAndSet(false, true));
+    }
+
+    // Завершение подписки может ждать занятого соединения, поэтому выполняется не в потоке рассылки
+    private void disconnect(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        subscriber.backlog.clear();
+        try {
+            sender.execute(subscriber.emitter::complete);
+        } catch (RejectedExecutionException e) {
+            // Приложение останавливается; соединение закроет контейнер
+        }
+    }
+
+    private static boolean send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Подписчик отключился или подписка уже завершена; соединение закроет контейнер
+            return false;
+        }
+    }
+
+    private String toJson(ProgressUpdate update) {
+        try {
+            return objectMapper.writeValueAsString(update);
+        } catch (JsonProcessingException e) {
+            logger.error("Не удалось сериализовать прогресс индексации: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Соединение подписчика и события, ожидающие отправки в него
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final ArrayBlockingQueue<SseEmitter.SseEventBuilder> backlog;
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, int capacity) {
+            this.emitter = emitter;
+            this.backlog = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
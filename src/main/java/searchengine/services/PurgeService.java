@@ -0,0 +1,284 @@
+package searchengine.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.IndexingStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Фоновое удаление поколений страниц сайта. Страницы выбираются по возрастанию id
+ * ограниченными диапазонами, и каждый диапазон удаляется отдельной короткой
+ * транзакцией (строки index, page_text, page_content, page), так что ни таблица,
+ * ни журнал отмены не блокируются надолго. После страниц удаляются леммы сайта,
+ * на которые больше не ссылается ни одна строка index, а если у сайта не осталось
+ * страниц — и его словарь сжатия (content_dictionary).
+ * Скорость подстраивается под базу: пауза между диапазонами не короче времени
+ * удаления диапазона, а при разросшейся истории undo InnoDB удаление ждёт, пока
+ * база её разберёт. Задачи выполняются одним потоком и не задерживают запуск индексации.
+ */
+@Service
+public class PurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PurgeService.class);
+
+    private static final String COUNT_SQL =
+            "SELECT COUNT(*) FROM page WHERE site_id = ? AND generation = ?";
+    private static final String NEXT_PAGES_SQL =
+            "SELECT id FROM page WHERE site_id = ? AND generation = ? AND id > ? ORDER BY id LIMIT ?";
+    private static final String NEXT_LEMMAS_SQL =
+            "SELECT id FROM lemma WHERE site_id = ? AND id > ? ORDER BY id LIMIT ?";
+    private static final String ORPHAN_LEMMAS_SQL =
+            "SELECT l.id, l.lemma FROM lemma l WHERE l.site_id = ? AND l.id BETWEEN ? AND ? AND l.frequency <= 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM `index` i WHERE i.lemma_id = l.id)";
+    // Условия повторяются в самом DELETE: между выборкой и удалением переиндексация страницы
+    // могла сослаться на лемму строками index или приростом частоты
+    private static final String DELETE_ORPHANS_SQL =
+            "DELETE FROM lemma WHERE id IN (%s) AND frequency <= 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM `index` i WHERE i.lemma_id = lemma.id)";
+    private static final String UNDO_HISTORY_SQL =
+            "SELECT `COUNT` FROM information_schema.INNODB_METRICS WHERE NAME = 'trx_rseg_history_len'";
+    private static final long PRESSURE_WAIT_MS = 1_000;
+    private static final int PROGRESS_LOG_EVERY = 20;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PageRevisions pageRevisions;
+    private final LemmaDictionary lemmaDictionary;
+    private final PageContentStore contentStore;
+    private final SiteStatistics siteStatistics;
+    private final int chunkSize;
+    private final long pauseMs;
+    private final long maxUndoHistory;
+    private final ConcurrentHashMap<String, Progress> tasks = new ConcurrentHashMap<>();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "purge-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean undoHistoryAvailable = true;
+
+    public PurgeService(JdbcTemplate jdbcTemplate, PageRevisions pageRevisions, LemmaDictionary lemmaDictionary,
+                        PageContentStore contentStore, SiteStatistics siteStatistics,
+                        CrawlerSettings crawlerSettings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.pageRevisions = pageRevisions;
+        this.lemmaDictionary = lemmaDictionary;
+        this.contentStore = contentStore;
+        this.siteStatistics = siteStatistics;
+        this.chunkSize = Math.max(1, crawlerSettings.getPurgeChunkSize());
+        this.pauseMs = Math.max(0, crawlerSettings.getPurgePauseMs());
+        this.maxUndoHistory = crawlerSettings.getPurgeMaxUndoHistory();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    // Ставит поколение сайта в очередь на удаление и сразу возвращает управление
+    public void purgeGeneration(int siteId, int generation) {
+        Progress progress = new Progress(siteId, generation);
+        if (tasks.putIfAbsent(progress.key(), progress) != null) {
+            return;
+        }
+        worker.execute(() -> run(progress));
+    }
+
+    // Состояние поставленных и выполняющихся удалений
+    public List<Progress> progress() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    private void run(Progress progress) {
+        progress.started = LocalDateTime.now();
+        try {
+            Long total = jdbcTemplate.queryForObject(COUNT_SQL, Long.class, progress.siteId, progress.generation);
+            progress.totalPages = total == null ? 0 : total;
+            purgePages(progress);
+            purgeDictionary(progress);
+            purgeOrphanLemmas(progress);
+            logger.info("Удалено поколение {} сайта {}: {} страниц, {} лемм", progress.generation, progress.siteId,
+                    progress.deletedPages, progress.deletedLemmas);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Ошибка удаления поколения {} сайта {}: {}", progress.generation, progress.siteId,
+                    e.getMessage());
+        } finally {
+            tasks.remove(progress.key());
+        }
+    }
+
+    private void purgePages(Progress progress) throws InterruptedException {
+        int lastId = 0;
+        int chunks = 0;
+        while (true) {
+            awaitLowPressure();
+            List<Integer> ids = jdbcTemplate.queryForList(NEXT_PAGES_SQL, Integer.class,
+                    progress.siteId, progress.generation, lastId, chunkSize);
+            if (ids.isEmpty()) {
+                return;
+            }
+            long started = System.currentTimeMillis();
+            pageRevisions.purgePages(progress.siteId, ids);
+            lastId = ids.get(ids.size() - 1);
+            progress.deletedPages += ids.size();
+            if (++chunks % PROGRESS_LOG_EVERY == 0) {
+                logger.info("Удаление поколения {} сайта {}: {} из {} страниц", progress.generation,
+                        progress.siteId, progress.deletedPages, progress.totalPages);
+            }
+            pause(System.currentTimeMillis() - started);
+        }
+    }
+
+    // Словарь сжатия общий для всех поколений сайта и нужен, пока у сайта есть хоть одна страница.
+    // Во время индексации он не трогается: обход мог уже сжать страницу словарём из памяти
+    private void purgeDictionary(Progress progress) {
+        if (!isSiteBusy(progress.siteId) && contentStore.dropDictionaryIfUnused(progress.siteId)) {
+            logger.info("Сайт {}: страниц не осталось, словарь сжатия удалён", progress.siteId);
+        }
+    }
+
+    // Леммы без строк index удаляются, только пока сайт не индексируется: иначе индексатор
+    // мог бы сослаться на уже удалённую строку lemma
+    private void purgeOrphanLemmas(Progress progress) throws InterruptedException {
+        if (isSiteBusy(progress.siteId)) {
+            return;
+        }
+        // Несброшенный прирост частот иначе создал бы удалённую лемму заново
+        lemmaDictionary.flush(progress.siteId);
+        int lastId = 0;
+        while (!isSiteBusy(progress.siteId)) {
+            awaitLowPressure();
+            List<Integer> ids = jdbcTemplate.queryForList(NEXT_LEMMAS_SQL, Integer.class,
+                    progress.siteId, lastId, chunkSize);
+            if (ids.isEmpty()) {
+                return;
+            }
+            long started = System.currentTimeMillis();
+            int from = ids.get(0);
+            lastId = ids.get(ids.size() - 1);
+            Map<Integer, String> orphans = new HashMap<>();
+            // Переиндексация страницы создаёт леммы с нулевой частотой раньше строк index на них:
+            // диапазон удаляется, только пока ни одна запись страниц сайта не держит id лемм
+            Lock purge = lemmaDictionary.purgeLock(progress.siteId);
+            purge.lock();
+            try {
+                jdbcTemplate.query(ORPHAN_LEMMAS_SQL, rs -> {
+                    orphans.put(rs.getInt(1), rs.getString(2));
+                }, progress.siteId, from, lastId);
+                if (!orphans.isEmpty()) {
+                    String placeholders = String.join(",", Collections.nCopies(orphans.size(), "?"));
+                    Object[] args = orphans.keySet().toArray();
+                    jdbcTemplate.update(String.format(DELETE_ORPHANS_SQL, placeholders), args);
+                    // Уцелевшие леммы снова используются; из словаря забываем только удалённые
+                    jdbcTemplate.queryForList("SELECT id FROM lemma WHERE id IN (" + placeholders + ")",
+                            Integer.class, args).forEach(orphans::remove);
+                    lemmaDictionary.forget(progress.siteId, orphans.values());
+                }
+            } finally {
+                purge.unlock();
+            }
+            if (!orphans.isEmpty()) {
+                siteStatistics.lemmasRemoved(progress.siteId, orphans.size());
+                progress.deletedLemmas += orphans.size();
+            }
+            pause(System.currentTimeMillis() - started);
+        }
+    }
+
+    private boolean isSiteBusy(int siteId) {
+        List<String> rows = jdbcTemplate.queryForList(
+                "SELECT status FROM site WHERE id = ? AND building_generation IS NULL", String.class, siteId);
+        return rows.isEmpty() || IndexingStatus.INDEXING.name().equals(rows.get(0));
+    }
+
+    // Пауза не короче времени самого диапазона: удаление занимает не больше половины времени базы
+    private void pause(long elapsedMs) throws InterruptedException {
+        long sleep = Math.max(pauseMs, elapsedMs);
+        if (sleep > 0) {
+            Thread.sleep(sleep);
+        }
+    }
+
+    // Длинная история undo означает, что база не успевает за изменениями; ждём, пока она её разберёт
+    private void awaitLowPressure() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+        while (maxUndoHistory > 0 && undoHistoryLength() > maxUndoHistory) {
+            logger.debug("История undo больше {}, удаление приостановлено", maxUndoHistory);
+            Thread.sleep(PRESSURE_WAIT_MS);
+        }
+    }
+
+    private long undoHistoryLength() {
+        if (!undoHistoryAvailable) {
+            return 0;
+        }
+        try {
+            List<Long> rows = jdbcTemplate.queryForList(UNDO_HISTORY_SQL, Long.class);
+            return rows.isEmpty() || rows.get(0) == null ? 0 : rows.get(0);
+        } catch (RuntimeException e) {
+            undoHistoryAvailable = false;
+            logger.warn("Длина истории undo недоступна, удаление регулируется только паузами: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    // Ход одного удаления
+    public static final class Progress {
+        private final int siteId;
+        private final int generation;
+        private volatile long totalPages;
+        private volatile long deletedPages;
+        private volatile long deletedLemmas;
+        private volatile LocalDateTime started;
+
+        Progress(int siteId, int generation) {
+            this.siteId = siteId;
+            this.generation = generation;
+        }
+
+        private String key() {
+            return siteId + ":" + generation;
+        }
+
+        public int getSiteId() {
+            return siteId;
+        }
+
+        public int getGeneration() {
+            return generation;
+        }
+
+        public long getTotalPages() {
+            return totalPages;
+        }
+
+        public long getDeletedPages() {
+            return deletedPages;
+        }
+
+        public long getDeletedLemmas() {
+            return deletedLemmas;
+        }
+
+        public LocalDateTime getStarted() {
+            return started;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Планировщик запроса для одного сайта: отбрасывает слишком частые леммы
+ * и упорядочивает остальные по возрастанию частоты. Число страниц сайта и
+ * частоты лемм берутся из поискового индекса в памяти, без запросов к базе.
+ */
+@Component
+public class QueryPlanner {
+
+    private final SearchIndex searchIndex;
+    private final SearchSettings searchSettings;
+
+    public QueryPlanner(SearchIndex searchIndex, SearchSettings searchSettings) {
+        this.searchIndex = searchIndex;
+        this.searchSettings = searchSettings;
+    }
+
+    // Пустой план означает, что на сайте нет страниц со всеми леммами запроса
+    public List<String> plan(int siteId, Collection<String> lemmas) {
+        List<String> planned = new ArrayList<>(lemmas.size());
+        for (String lemma : lemmas) {
+            if (searchIndex.documentFrequency(siteId, lemma) == 0) {
+                return List.of();
+            }
+            planned.add(lemma);
+        }
+        planned.sort(Comparator.comparingInt(lemma -> searchIndex.documentFrequency(siteId, lemma)));
+
+        int pageCount = searchIndex.pageCount(siteId);
+        if (pageCount < searchSettings.getPruneMinPages() || planned.size() < 2) {
+            return planned;
+        }
+        int maxFrequency = (int) (pageCount * searchSettings.getMaxLemmaShare());
+        // Самая редкая лемма остаётся всегда, иначе запрос из одних частых слов ничего бы не искал
+        int keep = 1;
+        while (keep < planned.size() && searchIndex.documentFrequency(siteId, planned.get(keep)) <= maxFrequency) {
+            keep++;
+        }
+        return keep == planned.size() ? planned : new ArrayList<>(planned.subList(0, keep));
+    }
+}
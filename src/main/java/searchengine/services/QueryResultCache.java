@@ -0,0 +1,151 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.SearchData;
+import searchengine.dto.search.SearchResponse;
+import searchengine.model.Site;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU-кэш ответов поиска, ограниченный по оценке занимаемой памяти.
+ * Ключ — отсортированный набор лемм запроса, сайт, offset и limit.
+ * Вместе с ответом хранятся поколения индекса всех сайтов, по которым шёл поиск:
+ * если хотя бы одно изменилось, запись считается устаревшей и удаляется при чтении.
+ */
+@Component
+public class QueryResultCache {
+
+    // Грубая оценка накладных расходов на объекты ответа и записи кэша
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int ITEM_OVERHEAD = 96;
+
+    private final IndexGeneration indexGeneration;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes;
+
+    public QueryResultCache(IndexGeneration indexGeneration, SearchSettings searchSettings) {
+        this.indexGeneration = indexGeneration;
+        this.maxBytes = searchSettings.getResultCacheBytes();
+    }
+
+    public static String key(Collection<String> lemmas, String siteUrl, int offset, int limit) {
+        List<String> sorted = new ArrayList<>(lemmas);
+        sorted.sort(null);
+        StringBuilder key = new StringBuilder(64);
+        key.append(siteUrl == null || siteUrl.isBlank() ? "*" : siteUrl)
+                .append('|').append(offset).append('|').append(limit);
+        for (String lemma : sorted) {
+            key.append('|').append(lemma);
+        }
+        return key.toString();
+    }
+
+    public SearchResponse get(String key, List<Site> sites) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isCurrent(sites, indexGeneration)) {
+                return entry.response;
+            }
+            remove(key);
+            return null;
+        }
+    }
+
+    // Поколения снимаются до выполнения поиска: если индекс изменится во время поиска,
+    // запись сразу окажется устаревшей и не будет отдана
+    public long[] generations(List<Site> sites) {
+        long[] generations = new long[sites.size()];
+        for (int i = 0; i < generations.length; i++) {
+            generations[i] = indexGeneration.current(sites.get(i).getId());
+        }
+        return generations;
+    }
+
+    public void put(String key, List<Site> sites, long[] generations, SearchResponse response) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        int[] siteIds = new int[sites.size()];
+        for (int i = 0; i < siteIds.length; i++) {
+            siteIds[i] = sites.get(i).getId();
+        }
+        Entry entry = new Entry(siteIds, generations, response, key.length() * 2L + estimate(response));
+        if (entry.bytes > maxBytes / 4) {
+            return;
+        }
+        synchronized (this) {
+            remove(key);
+            entries.put(key, entry);
+            usedBytes += entry.bytes;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (usedBytes > maxBytes && eldest.hasNext()) {
+                usedBytes -= eldest.next().getValue().bytes;
+                eldest.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            usedBytes -= previous.bytes;
+        }
+    }
+
+    private static long estimate(SearchResponse response) {
+        long bytes = ENTRY_OVERHEAD;
+        if (response.getData() != null) {
+            for (SearchData item : response.getData()) {
+                bytes += ITEM_OVERHEAD + 2L * (length(item.getSite()) + length(item.getSiteName())
+                        + length(item.getUri()) + length(item.getTitle()) + length(item.getSnippet()));
+            }
+        }
+        return bytes;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static final class Entry {
+        private final int[] siteIds;
+        private final long[] generations;
+        private final SearchResponse response;
+        private final long bytes;
+
+        Entry(int[] siteIds, long[] generations, SearchResponse response, long bytes) {
+            this.siteIds = siteIds;
+            this.generations = generations;
+            this.response = response;
+            this.bytes = bytes;
+        }
+
+        // Набор сайтов тоже сверяется: при поиске по всем сайтам он мог измениться
+        boolean isCurrent(List<Site> sites, IndexGeneration indexGeneration) {
+            if (sites.size() != siteIds.length) {
+                return false;
+            }
+            for (int i = 0; i < siteIds.length; i++) {
+                if (sites.get(i).getId() != siteIds[i] || indexGeneration.current(siteIds[i]) != generations[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
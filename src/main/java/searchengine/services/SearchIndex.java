@@ -0,0 +1,296 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.util.ObjectIntHashMap;
+import searchengine.util.PostingList;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Инвертированный индекс в памяти: для каждого сайта лемма → сжатый список
+ * страниц с рангами. Загружается из таблицы index при старте и пополняется
+ * стадией индексации по мере сохранения новых страниц. Во время полной
+ * переиндексации страницы нового поколения сайта копятся в теневом индексе,
+ * а поиск идёт по старому; по окончании обхода индексы подменяются.
+ */
+@Component
+public class SearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchIndex.class);
+
+    private static final String LOAD_SQL =
+            "SELECT l.site_id, l.lemma, i.page_id, i.`rank`, l.id, s.active_generation FROM `index` i " +
+            "JOIN lemma l ON l.id = i.lemma_id JOIN page p ON p.id = i.page_id JOIN site s ON s.id = p.site_id " +
+            "WHERE p.generation = s.active_generation";
+
+    private static final String LOAD_GENERATION_SQL =
+            "SELECT l.lemma, i.page_id, i.`rank`, l.id FROM `index` i JOIN lemma l ON l.id = i.lemma_id " +
+            "JOIN page p ON p.id = i.page_id WHERE p.site_id = ? AND p.generation = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentHashMap<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, SiteIndex> shadows = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public SearchIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        Thread loader = new Thread(this::load, "search-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    // Потоковое чтение таблицы index (fetchSize = MIN_VALUE включает построчную выдачу в MySQL)
+    void load() {
+        long started = System.currentTimeMillis();
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(Integer.MIN_VALUE);
+        long[] rows = new long[1];
+        try {
+            streaming.query(LOAD_SQL, rs -> {
+                siteIndex(rs.getInt(1), rs.getInt(6)).add(rs.getString(2), rs.getInt(5), rs.getInt(3), PostingList.scaleRank(rs.getFloat(4)));
+                rows[0]++;
+            });
+            loaded = true;
+            logger.info("Поисковый индекс загружен: {} вхождений, {} сайтов за {} ms",
+                    rows[0], sites.size(), System.currentTimeMillis() - started);
+        } catch (RuntimeException e) {
+            logger.error("Не удалось загрузить поисковый индекс: {}", e.getMessage());
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Добавляет страницу в индекс её поколения; true, если страница сразу видна поиску
+    public boolean addPage(int siteId, int generation, int pageId, ObjectIntHashMap<String> lemmaRanks,
+                           Map<String, Integer> lemmaIds) {
+        SiteIndex shadow = shadows.get(siteId);
+        boolean visible = shadow == null || shadow.generation != generation;
+        SiteIndex site = visible ? liveIndex(siteId, generation) : shadow;
+        if (site == null) {
+            // Запоздавшая страница брошенного или сменённого поколения
+            return false;
+        }
+        lemmaRanks.forEach((lemma, rank) -> {
+            Integer lemmaId = lemmaIds.get(lemma);
+            site.add(lemma, lemmaId == null ? 0 : lemmaId, pageId, PostingList.scaleRank(rank));
+        });
+        return visible;
+    }
+
+    // Начинает теневой индекс нового поколения сайта; поиск продолжает идти по текущему
+    public void beginShadow(int siteId, int generation) {
+        shadows.put(siteId, new SiteIndex(generation));
+    }
+
+    // Теневой индекс недостроенного поколения, уже частично записанного в базу (продолжение обхода)
+    public void loadShadow(int siteId, int generation) {
+        SiteIndex shadow = new SiteIndex(generation);
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(Integer.MIN_VALUE);
+        streaming.query(LOAD_GENERATION_SQL, rs -> {
+            shadow.add(rs.getString(1), rs.getInt(4), rs.getInt(2), PostingList.scaleRank(rs.getFloat(3)));
+        }, siteId, generation);
+        shadows.put(siteId, shadow);
+        logger.info("Теневой индекс сайта {} (поколение {}) загружен: {} страниц", siteId, generation,
+                shadow.pages.size());
+    }
+
+    // Делает теневой индекс текущим одной заменой ссылки
+    public void swapShadow(int siteId) {
+        SiteIndex shadow = shadows.remove(siteId);
+        if (shadow != null) {
+            sites.put(siteId, shadow);
+        }
+    }
+
+    public void dropShadow(int siteId) {
+        shadows.remove(siteId);
+    }
+
+    // Убирает страницы сайта из списков вхождений перечисленных лемм (страницы изменились или исчезли)
+    public void removePages(int siteId, Collection<String> lemmas, Set<Integer> pageIds) {
+        SiteIndex site = sites.get(siteId);
+        if (site == null || pageIds.isEmpty()) {
+            return;
+        }
+        for (String lemma : lemmas) {
+            LemmaPostings postings = site.lemmas.get(lemma);
+            if (postings != null) {
+                postings.remove(pageIds);
+            }
+        }
+        site.pages.removeAll(pageIds);
+    }
+
+    // Обновляет одну страницу текущего поколения: вхождения снимаются только у лемм, которые
+    // пропали со страницы или сменили ранг, и добавляются только для новых и изменившихся
+    public void updatePage(int siteId, int generation, int pageId, Collection<String> removed,
+                           ObjectIntHashMap<String> added, Map<String, Integer> lemmaIds, boolean hasLemmas) {
+        // Поколение могло смениться, пока страница загружалась: тогда индекс в памяти не трогаем
+        SiteIndex site = added.isEmpty() ? sites.get(siteId) : liveIndex(siteId, generation);
+        if (site == null || site.generation != generation) {
+            return;
+        }
+        Set<Integer> page = Set.of(pageId);
+        for (String lemma : removed) {
+            LemmaPostings postings = site.lemmas.get(lemma);
+            if (postings != null) {
+                postings.remove(page);
+            }
+        }
+        SiteIndex target = site;
+        added.forEach((lemma, rank) -> {
+            Integer lemmaId = lemmaIds.get(lemma);
+            target.add(lemma, lemmaId == null ? 0 : lemmaId, pageId, PostingList.scaleRank(rank));
+        });
+        if (!hasLemmas) {
+            site.pages.remove(pageId);
+        }
+    }
+
+    // Список вхождений леммы на сайте; пустой список, если леммы нет
+    public PostingList postings(int siteId, String lemma) {
+        SiteIndex site = sites.get(siteId);
+        if (site == null) {
+            return PostingList.EMPTY;
+        }
+        LemmaPostings postings = site.lemmas.get(lemma);
+        return postings == null ? PostingList.EMPTY : postings.snapshot();
+    }
+
+    // Число страниц сайта с леммой (по счётчику, без слияния буфера новых вхождений)
+    public int documentFrequency(int siteId, String lemma) {
+        SiteIndex site = sites.get(siteId);
+        if (site == null) {
+            return 0;
+        }
+        LemmaPostings postings = site.lemmas.get(lemma);
+        return postings == null ? 0 : postings.size();
+    }
+
+    // Идентификатор строки lemma для леммы сайта; 0, если лемма неизвестна
+    public int lemmaId(int siteId, String lemma) {
+        SiteIndex site = sites.get(siteId);
+        if (site == null) {
+            return 0;
+        }
+        LemmaPostings postings = site.lemmas.get(lemma);
+        return postings == null ? 0 : postings.lemmaId;
+    }
+
+    public Set<Integer> siteIds() {
+        return sites.keySet();
+    }
+
+    public int pageCount(int siteId) {
+        SiteIndex site = sites.get(siteId);
+        return site == null ? 0 : site.pages.size();
+    }
+
+    private SiteIndex siteIndex(int siteId, int generation) {
+        return sites.computeIfAbsent(siteId, id -> new SiteIndex(generation));
+    }
+
+    // Индекс текущего поколения сайта или null, если generation не текущее. Если индекса в памяти
+    // ещё нет, он создаётся только для поколения, которое текущее по строке site в базе
+    private SiteIndex liveIndex(int siteId, int generation) {
+        SiteIndex site = sites.get(siteId);
+        if (site == null) {
+            List<Integer> active = jdbcTemplate.queryForList(
+                    "SELECT active_generation FROM site WHERE id = ?", Integer.class, siteId);
+            if (active.isEmpty() || active.get(0) != generation) {
+                return null;
+            }
+            site = siteIndex(siteId, generation);
+        }
+        return site.generation == generation ? site : null;
+    }
+
+    private static final class SiteIndex {
+        private final int generation;
+        private final ConcurrentHashMap<String, LemmaPostings> lemmas = new ConcurrentHashMap<>();
+        private final Set<Integer> pages = ConcurrentHashMap.newKeySet();
+
+        SiteIndex(int generation) {
+            this.generation = generation;
+        }
+
+        void add(String lemma, int lemmaId, int pageId, int scaledRank) {
+            LemmaPostings postings = lemmas.computeIfAbsent(lemma, l -> new LemmaPostings());
+            if (lemmaId != 0) {
+                postings.lemmaId = lemmaId;
+            }
+            postings.add(pageId, scaledRank);
+            pages.add(pageId);
+        }
+    }
+
+    /**
+     * Сжатый список плюс небольшой буфер новых вхождений: запись — O(1),
+     * буфер вливается в сжатый список при чтении или при переполнении.
+     */
+    private static final class LemmaPostings {
+        private static final int MERGE_THRESHOLD = 4096;
+
+        private volatile int lemmaId;
+        private PostingList base = PostingList.EMPTY;
+        private int[] pendingDocs = new int[4];
+        private int[] pendingRanks = new int[4];
+        private int pending;
+
+        synchronized void add(int pageId, int scaledRank) {
+            if (pending == pendingDocs.length) {
+                pendingDocs = Arrays.copyOf(pendingDocs, pending * 2);
+                pendingRanks = Arrays.copyOf(pendingRanks, pending * 2);
+            }
+            pendingDocs[pending] = pageId;
+            pendingRanks[pending++] = scaledRank;
+            if (pending >= MERGE_THRESHOLD) {
+                compact();
+            }
+        }
+
+        synchronized void remove(Set<Integer> pageIds) {
+            if (pending > 0) {
+                compact();
+            }
+            base = base.without(pageIds::contains);
+        }
+
+        synchronized int size() {
+            return base.size() + pending;
+        }
+
+        synchronized PostingList snapshot() {
+            if (pending > 0) {
+                compact();
+            }
+            return base;
+        }
+
+        private void compact() {
+            base = base.merge(pendingDocs, pendingRanks, pending);
+            pending = 0;
+            if (pendingDocs.length > 64) {
+                pendingDocs = new int[4];
+                pendingRanks = new int[4];
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package searchengine.services;
+
+import searchengine.dto.search.SearchResponse;
+
+public interface SearchService {
+    SearchResponse search(String query, String site, int offset, int limit);
+}
@@ -0,0 +1,133 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Service;
+import searchengine.TextProcessor;
+import searchengine.dto.search.SearchData;
+import searchengine.dto.search.SearchResponse;
+import searchengine.model.Site;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class SearchServiceImpl implements SearchService {
+
+    private static final ThreadLocal<TopKScorer> SCORERS = ThreadLocal.withInitial(TopKScorer::new);
+    // Страница выдачи не длиннее MAX_LIMIT, а листать можно только в пределах первых MAX_WINDOW
+    // результатов: куча и её массивы в ThreadLocal потока запроса остаются небольшими
+    public static final int MAX_LIMIT = 100;
+    public static final int MAX_WINDOW = TopKScorer.EXACT_HITS;
+
+    private final SearchIndex searchIndex;
+    private final QueryPlanner queryPlanner;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final SnippetService snippetService;
+    private final QueryResultCache resultCache;
+
+    public SearchServiceImpl(SearchIndex searchIndex, QueryPlanner queryPlanner, SiteRepository siteRepository,
+                             PageRepository pageRepository, SnippetService snippetService,
+                             QueryResultCache resultCache) {
+        this.searchIndex = searchIndex;
+        this.queryPlanner = queryPlanner;
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.snippetService = snippetService;
+        this.resultCache = resultCache;
+    }
+
+    @Override
+    public SearchResponse search(String query, String siteUrl, int offset, int limit) {
+        limit = Math.min(limit, MAX_LIMIT);
+        offset = Math.min(offset, MAX_WINDOW);
+        List<String> lemmas = new ArrayList<>();
+        TextProcessor.countLemmas(query).forEachKey(lemmas::add);
+        List<Site> sites = resolveSites(siteUrl);
+        String cacheKey = QueryResultCache.key(lemmas, siteUrl, offset, limit);
+        SearchResponse cached = resultCache.get(cacheKey, sites);
+        if (cached != null) {
+            return cached;
+        }
+        long[] generations = resultCache.generations(sites);
+
+        // Куча ограничена offset + limit: страницы за пределами запрошенного окна не нужны
+        TopKScorer scorer = SCORERS.get();
+        scorer.reset(Math.min(offset + limit, MAX_WINDOW));
+        for (Site site : sites) {
+            List<String> plan = queryPlanner.plan(site.getId(), lemmas);
+            if (!plan.isEmpty()) {
+                scorer.scoreSite(site.getId(), searchIndex, plan);
+            }
+        }
+        scorer.finish();
+
+        SearchResponse response = new SearchResponse();
+        response.setResult(true);
+        // При пропуске блоков число найденных — не меньше EXACT_HITS, дальше окна выдачи не листают
+        response.setCount(scorer.totalHits());
+        response.setData(buildData(scorer, sites, lemmas, offset));
+        // Пока индекс загружается из базы, ответы неполные и не кэшируются
+        if (searchIndex.isLoaded()) {
+            resultCache.put(cacheKey, sites, generations, response);
+        }
+        return response;
+    }
+
+    private List<Site> resolveSites(String siteUrl) {
+        if (siteUrl == null || siteUrl.isBlank()) {
+            return siteRepository.findAll();
+        }
+        Site site = siteRepository.findByUrl(siteUrl);
+        if (site == null) {
+            throw new IllegalArgumentException("Указанный сайт не найден: " + siteUrl);
+        }
+        return List.of(site);
+    }
+
+    private List<SearchData> buildData(TopKScorer scorer, List<Site> sites, Collection<String> lemmas, int offset) {
+        List<SearchData> data = new ArrayList<>();
+        if (scorer.resultCount() <= offset) {
+            return data;
+        }
+        // Лучший результат всегда остаётся в куче, его релевантность — максимальная
+        long maxScore = scorer.scoreAt(0);
+
+        Map<Integer, Site> siteById = new HashMap<>();
+        for (Site site : sites) {
+            siteById.put(site.getId(), site);
+        }
+        Map<Integer, Integer> pageSites = new HashMap<>();
+        for (int i = offset; i < scorer.resultCount(); i++) {
+            pageSites.put(scorer.pageAt(i), scorer.siteAt(i));
+        }
+        // Содержимое страниц не загружается: путь берём из page, заголовок и сниппет — из page_text
+        Map<Integer, String> paths = new HashMap<>();
+        for (Object[] row : pageRepository.findPathsByIdIn(pageSites.keySet())) {
+            paths.put((Integer) row[0], (String) row[1]);
+        }
+        Map<Integer, SnippetService.Snippet> snippets = snippetService.snippets(pageSites, lemmas);
+
+        for (int i = offset; i < scorer.resultCount(); i++) {
+            String path = paths.get(scorer.pageAt(i));
+            Site site = siteById.get(scorer.siteAt(i));
+            if (path == null || site == null) {
+                continue;
+            }
+            SnippetService.Snippet snippet = snippets.get(scorer.pageAt(i));
+            SearchData item = new SearchData();
+            item.setSite(site.getUrl());
+            item.setSiteName(site.getName());
+            item.setUri(path);
+            item.setTitle(snippet == null ? "" : snippet.getTitle());
+            item.setSnippet(snippet == null ? "" : snippet.getText());
+            item.setRelevance(maxScore == 0 ? 0 : (float) scorer.scoreAt(i) / maxScore);
+            data.add(item);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,128 @@
+package searchengine.services;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+
+import java.util.List;
+
+/**
+ * Поколения страниц сайта. Полная переиндексация пишет страницы в новое (теневое)
+ * поколение, пока поиск обслуживается текущим; по окончании обхода поколения
+ * меняются местами одним обновлением строки site и заменой индекса в памяти.
+ * Старое поколение удаляется в фоне (PurgeService) небольшими диапазонами вместо
+ * одного большого DELETE, который надолго блокировал бы таблицы.
+ * Поколение, обход которого остановлен, но сохранил журнал (FrontierStore),
+ * не удаляется: следующий обход достраивает его.
+ */
+@Component
+public class SiteGenerations {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiteGenerations.class);
+
+    private static final String STALE_SQL =
+            "SELECT DISTINCT p.site_id, p.generation FROM page p JOIN site s ON s.id = p.site_id " +
+            "WHERE p.generation <> s.active_generation " +
+            "AND (s.building_generation IS NULL OR p.generation <> s.building_generation)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchIndex searchIndex;
+    private final IndexGeneration indexGeneration;
+    private final PurgeService purgeService;
+    private final PageRevisions pageRevisions;
+    private final FrontierStore frontierStore;
+
+    public SiteGenerations(JdbcTemplate jdbcTemplate, SearchIndex searchIndex, IndexGeneration indexGeneration,
+                           PurgeService purgeService, PageRevisions pageRevisions, FrontierStore frontierStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.searchIndex = searchIndex;
+        this.indexGeneration = indexGeneration;
+        this.purgeService = purgeService;
+        this.pageRevisions = pageRevisions;
+        this.frontierStore = frontierStore;
+    }
+
+    // Поколения, оставшиеся от прерванных обходов и незавершённой уборки; выполняется
+    // до того, как приложение начнёт принимать запросы и запускать индексацию
+    @PostConstruct
+    public void collectStale() {
+        List<int[]> building = jdbcTemplate.query(
+                "SELECT id, building_generation FROM site WHERE building_generation IS NOT NULL",
+                (rs, rowNum) -> new int[]{rs.getInt(1), rs.getInt(2)});
+        for (int[] site : building) {
+            if (!frontierStore.canResume(site[0], site[1], false)) {
+                jdbcTemplate.update("UPDATE site SET building_generation = NULL WHERE id = ?", site[0]);
+            }
+        }
+        List<int[]> stale = jdbcTemplate.query(STALE_SQL, (rs, rowNum) -> new int[]{rs.getInt(1), rs.getInt(2)});
+        for (int[] generation : stale) {
+            purgeService.purgeGeneration(generation[0], generation[1]);
+        }
+    }
+
+    // Начинает новое поколение уже сохранённого сайта; недостроенное прошлое поколение уходит в уборку
+    public int begin(Site site) {
+        Integer building = site.getBuildingGeneration();
+        int generation = Math.max(site.getActiveGeneration(), building == null ? 0 : building) + 1;
+        if (building != null) {
+            purgeService.purgeGeneration(site.getId(), building);
+        }
+        jdbcTemplate.update("UPDATE site SET building_generation = ? WHERE id = ?", generation, site.getId());
+        site.setBuildingGeneration(generation);
+        searchIndex.beginShadow(site.getId(), generation);
+        return generation;
+    }
+
+    // Продолжает недостроенное поколение сайта, обход которого был прерван: повторные строки
+    // страниц убираются, теневой индекс загружается из базы
+    public int resume(Site site) {
+        int generation = site.getBuildingGeneration();
+        pageRevisions.removeDuplicates(site.getId(), generation, false);
+        searchIndex.loadShadow(site.getId(), generation);
+        logger.info("Сайт {}: продолжается построение поколения {}", site.getUrl(), generation);
+        return generation;
+    }
+
+    // Откладывает недостроенное поколение до продолжения обхода: строки остаются в базе,
+    // теневой индекс в памяти освобождается
+    public void suspend(Site site) {
+        if (site.getBuildingGeneration() == null) {
+            return;
+        }
+        searchIndex.dropShadow(site.getId());
+        logger.info("Сайт {}: построение поколения {} приостановлено", site.getUrl(), site.getBuildingGeneration());
+    }
+
+    // Делает построенное поколение текущим; вызывается, когда все страницы обхода проиндексированы
+    public void swap(Site site) {
+        Integer building = site.getBuildingGeneration();
+        if (building == null) {
+            return;
+        }
+        int previous = site.getActiveGeneration();
+        jdbcTemplate.update("UPDATE site SET active_generation = ?, building_generation = NULL WHERE id = ?",
+                building, site.getId());
+        site.setActiveGeneration(building);
+        site.setBuildingGeneration(null);
+        searchIndex.swapShadow(site.getId());
+        indexGeneration.bump(site.getId());
+        logger.info("Сайт {}: поиск переключён на поколение {}", site.getUrl(), building);
+        purgeService.purgeGeneration(site.getId(), previous);
+    }
+
+    // Бросает недостроенное поколение (индексация остановлена или завершилась ошибкой)
+    public void abandon(Site site) {
+        Integer building = site.getBuildingGeneration();
+        if (building == null) {
+            return;
+        }
+        jdbcTemplate.update("UPDATE site SET building_generation = NULL WHERE id = ?", site.getId());
+        site.setBuildingGeneration(null);
+        searchIndex.dropShadow(site.getId());
+        logger.info("Сайт {}: недостроенное поколение {} будет удалено", site.getUrl(), building);
+        purgeService.purgeGeneration(site.getId(), building);
+    }
+}
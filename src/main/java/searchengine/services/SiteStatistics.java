@@ -0,0 +1,262 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Статистика сайтов в памяти. Число страниц (по поколениям) и лемм сайта ведут
+ * счётчики LongAdder, которые увеличивают и уменьшают стадии записи страниц,
+ * словарь лемм и удаление страниц; статус, время статуса и ошибка берутся из
+ * снимка строк site, обновляемого раз в секунду. Запрос статистики читает только
+ * память. Счётчики периодически сверяются с базой (COUNT по индексам
+ * (site_id, generation) и (site_id, lemma)) и исправляют накопившееся расхождение,
+ * например от записей в обход счётчиков. Сама сверка может ошибиться на размер
+ * пакетов, зафиксированных во время подсчёта (см. reconcile); такая ошибка держится
+ * не дольше одного интервала сверки.
+ * Ход обхода (загружено, с ошибкой, проиндексировано, очередь URL) считается с запуска
+ * приложения и нужен потоку прогресса (ProgressBroadcaster).
+ */
+@Component
+public class SiteStatistics {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiteStatistics.class);
+
+    private static final String SITES_SQL =
+            "SELECT id, url, name, status, status_time, last_error, active_generation, building_generation FROM site";
+    private static final String PAGE_COUNTS_SQL =
+            "SELECT site_id, generation, COUNT(*) FROM page GROUP BY site_id, generation";
+    private static final String LEMMA_COUNTS_SQL =
+            "SELECT site_id, COUNT(*) FROM lemma GROUP BY site_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentHashMap<Long, LongAdder> pages = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, LongAdder> lemmas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Activity> activity = new ConcurrentHashMap<>();
+    private volatile Map<String, SiteState> sitesByUrl = Map.of();
+
+    public SiteStatistics(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void pagesAdded(int siteId, int generation, long count) {
+        counter(pages, key(siteId, generation)).add(count);
+    }
+
+    public void pagesRemoved(int siteId, int generation, long count) {
+        counter(pages, key(siteId, generation)).add(-count);
+    }
+
+    public void lemmasAdded(int siteId, long count) {
+        counter(lemmas, siteId).add(count);
+    }
+
+    public void lemmasRemoved(int siteId, long count) {
+        counter(lemmas, siteId).add(-count);
+    }
+
+    public void pageFetched(int siteId) {
+        activityOf(siteId).fetched.increment();
+    }
+
+    public void fetchFailed(int siteId) {
+        activityOf(siteId).failed.increment();
+    }
+
+    public void pagesIndexed(int siteId, long count) {
+        activityOf(siteId).indexed.add(count);
+    }
+
+    // Глубина очереди URL идущего обхода сайта, показываемая в прогрессе
+    public void crawlStarted(int siteId, IntSupplier queueDepth) {
+        activityOf(siteId).queueDepth = queueDepth;
+    }
+
+    public void crawlFinished(int siteId) {
+        activityOf(siteId).queueDepth = null;
+    }
+
+    public long fetched(int siteId) {
+        Activity site = activity.get(siteId);
+        return site == null ? 0 : site.fetched.sum();
+    }
+
+    public long failed(int siteId) {
+        Activity site = activity.get(siteId);
+        return site == null ? 0 : site.failed.sum();
+    }
+
+    public long indexed(int siteId) {
+        Activity site = activity.get(siteId);
+        return site == null ? 0 : site.indexed.sum();
+    }
+
+    public int queueDepth(int siteId) {
+        Activity site = activity.get(siteId);
+        IntSupplier queueDepth = site == null ? null : site.queueDepth;
+        return queueDepth == null ? 0 : queueDepth.getAsInt();
+    }
+
+    // Состояние сайта из последнего снимка строк site или null, если сайт ещё не сохранён
+    public SiteState site(String url) {
+        return sitesByUrl.get(url);
+    }
+
+    // Страницы сайта: во время полной переиндексации — строящегося поколения, иначе текущего
+    public long pages(SiteState site) {
+        int generation = site.buildingGeneration != null ? site.buildingGeneration : site.activeGeneration;
+        LongAdder counter = pages.get(key(site.id, generation));
+        return counter == null ? 0 : Math.max(0, counter.sum());
+    }
+
+    public long lemmas(SiteState site) {
+        LongAdder counter = lemmas.get(site.id);
+        return counter == null ? 0 : Math.max(0, counter.sum());
+    }
+
+    @Scheduled(fixedDelayString = "${statistics-settings.site-refresh-interval-ms:1000}")
+    public void refreshSites() {
+        Map<String, SiteState> snapshot = new HashMap<>();
+        jdbcTemplate.query(SITES_SQL, rs -> {
+            Timestamp statusTime = rs.getTimestamp("status_time");
+            int building = rs.getInt("building_generation");
+            Integer buildingGeneration = rs.wasNull() ? null : building;
+            SiteState site = new SiteState(rs.getInt("id"), rs.getString("url"), rs.getString("name"),
+                    rs.getString("status"), statusTime == null ? 0 : statusTime.getTime(), rs.getString("last_error"),
+                    rs.getInt("active_generation"), buildingGeneration);
+            snapshot.put(site.url, site);
+        });
+        sitesByUrl = snapshot;
+    }
+
+    // Сверка с базой. Значения счётчиков запоминаются до подсчёта, и к счётчику добавляется
+    // только разница между базой и запомненным: изменения, пришедшие во время подсчёта, не теряются.
+    // Счётчик меняется уже после фиксации записи, поэтому пакет, зафиксированный между снятием
+    // значений и его pagesAdded (lemmasAdded, pagesRemoved), попадает и в COUNT, и в счётчик:
+    // до следующей сверки число завышено (при удалении — занижено) на размер такого пакета.
+    // Следующая сверка это исправляет, хотя сама может так же ошибиться на пакеты своего подсчёта
+    @Scheduled(fixedDelayString = "${statistics-settings.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        long started = System.currentTimeMillis();
+        Map<Long, Long> pagesBefore = sums(pages);
+        Map<Long, Long> pageCounts = new HashMap<>();
+        jdbcTemplate.query(PAGE_COUNTS_SQL, rs -> {
+            pageCounts.put(key(rs.getInt(1), rs.getInt(2)), rs.getLong(3));
+        });
+        long pageDrift = correct(pages, pagesBefore, pageCounts);
+
+        Map<Integer, Long> lemmasBefore = sums(lemmas);
+        Map<Integer, Long> lemmaCounts = new HashMap<>();
+        jdbcTemplate.query(LEMMA_COUNTS_SQL, rs -> {
+            lemmaCounts.put(rs.getInt(1), rs.getLong(2));
+        });
+        long lemmaDrift = correct(lemmas, lemmasBefore, lemmaCounts);
+        logger.debug("Статистика сверена с базой за {} мс: расхождение страниц {}, лемм {}",
+                System.currentTimeMillis() - started, pageDrift, lemmaDrift);
+    }
+
+    private static <K> Map<K, Long> sums(ConcurrentHashMap<K, LongAdder> counters) {
+        Map<K, Long> sums = new HashMap<>();
+        counters.forEach((key, counter) -> sums.put(key, counter.sum()));
+        return sums;
+    }
+
+    // Возвращает суммарное исправленное расхождение
+    private static <K> long correct(ConcurrentHashMap<K, LongAdder> counters, Map<K, Long> before,
+                                    Map<K, Long> actual) {
+        Set<K> keys = new HashSet<>(before.keySet());
+        keys.addAll(actual.keySet());
+        long total = 0;
+        for (K key : keys) {
+            long drift = actual.getOrDefault(key, 0L) - before.getOrDefault(key, 0L);
+            if (drift != 0) {
+                counter(counters, key).add(drift);
+                total += Math.abs(drift);
+            }
+        }
+        // Счётчики удалённых поколений и сайтов больше не нужны
+        counters.entrySet().removeIf(entry -> !actual.containsKey(entry.getKey()) && entry.getValue().sum() == 0);
+        return total;
+    }
+
+    private static <K> LongAdder counter(ConcurrentHashMap<K, LongAdder> counters, K key) {
+        LongAdder counter = counters.get(key);
+        return counter != null ? counter : counters.computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    private Activity activityOf(int siteId) {
+        Activity site = activity.get(siteId);
+        return site != null ? site : activity.computeIfAbsent(siteId, id -> new Activity());
+    }
+
+    private static long key(int siteId, int generation) {
+        return (long) siteId << 32 | (generation & 0xffffffffL);
+    }
+
+    // Ход обхода сайта с запуска приложения
+    private static final class Activity {
+        private final LongAdder fetched = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder indexed = new LongAdder();
+        private volatile IntSupplier queueDepth;
+    }
+
+    // Строка site на момент последнего снимка
+    public static final class SiteState {
+        private final int id;
+        private final String url;
+        private final String name;
+        private final String status;
+        private final long statusTime;
+        private final String lastError;
+        private final int activeGeneration;
+        private final Integer buildingGeneration;
+
+        SiteState(int id, String url, String name, String status, long statusTime, String lastError,
+                  int activeGeneration, Integer buildingGeneration) {
+            this.id = id;
+            this.url = url;
+            this.name = name;
+            this.status = status;
+            this.statusTime = statusTime;
+            this.lastError = lastError;
+            this.activeGeneration = activeGeneration;
+            this.buildingGeneration = buildingGeneration;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long getStatusTime() {
+            return statusTime;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package searchengine.services;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.TextProcessor;
+import searchengine.config.SearchSettings;
+import searchengine.util.BoundedCache;
+import searchengine.util.HtmlTextExtractor;
+import searchengine.util.IntArrayList;
+import searchengine.util.TokenOffsets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Построение сниппетов по данным, сохранённым при индексации (таблица page_text):
+ * для слов запроса читаются только их позиции, после чего выбирается окно текста
+ * с наибольшим числом разных слов запроса. Страница заново не разбирается и не
+ * лемматизируется. Тексты часто встречающихся в выдаче страниц кэшируются.
+ */
+@Service
+public class SnippetService {
+
+    private static final String SELECT_CHUNK_SQL =
+            "SELECT page_id, title, text, token_offsets FROM page_text WHERE page_id IN (";
+    private static final int SELECT_CHUNK = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchIndex searchIndex;
+    private final PageContentStore contentStore;
+    private final int snippetLength;
+    private final BoundedCache<Integer, StoredText> cache;
+
+    public SnippetService(JdbcTemplate jdbcTemplate, SearchIndex searchIndex, PageContentStore contentStore,
+                          SearchSettings searchSettings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.searchIndex = searchIndex;
+        this.contentStore = contentStore;
+        this.snippetLength = Math.max(40, searchSettings.getSnippetLength());
+        this.cache = new BoundedCache<>(Math.max(2, searchSettings.getSnippetCacheSize()));
+    }
+
+    // Заголовки и сниппеты для страниц выдачи; pageSites: id страницы → id сайта
+    public Map<Integer, Snippet> snippets(Map<Integer, Integer> pageSites, Collection<String> lemmas) {
+        List<String> queryLemmas = new ArrayList<>(lemmas);
+        Map<Integer, StoredText> texts = load(pageSites.keySet(), queryLemmas);
+        Map<Integer, Snippet> result = new HashMap<>(texts.size() * 2);
+        texts.forEach((pageId, stored) -> {
+            int[][] positions = stored.offsets == null
+                    ? stored.positions
+                    : TokenOffsets.decode(stored.offsets, lemmaIds(pageSites.get(pageId), queryLemmas));
+            result.put(pageId, new Snippet(stored.title, buildSnippet(stored.text, positions)));
+        });
+        return result;
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    // Текст страницы изменился (переиндексация одной страницы)
+    public void invalidate(int pageId) {
+        cache.invalidate(pageId);
+    }
+
+    private int[] lemmaIds(int siteId, List<String> lemmas) {
+        int[] ids = new int[lemmas.size()];
+        for (int i = 0; i < ids.length; i++) {
+            // Неизвестная лемма получает id -1, которого нет в таблице позиций
+            int id = searchIndex.lemmaId(siteId, lemmas.get(i));
+            ids[i] = id == 0 ? -1 : id;
+        }
+        return ids;
+    }
+
+    private Map<Integer, StoredText> load(Collection<Integer> pageIds, List<String> lemmas) {
+        Map<Integer, StoredText> texts = new HashMap<>(pageIds.size() * 2);
+        List<Integer> missing = new ArrayList<>();
+        for (Integer pageId : pageIds) {
+            StoredText cached = cache.get(pageId);
+            if (cached != null) {
+                texts.put(pageId, cached);
+            } else {
+                missing.add(pageId);
+            }
+        }
+        for (int from = 0; from < missing.size(); from += SELECT_CHUNK) {
+            List<Integer> chunk = missing.subList(from, Math.min(missing.size(), from + SELECT_CHUNK));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query(SELECT_CHUNK_SQL + placeholders + ")", rs -> {
+                StoredText stored = new StoredText(rs.getString("title"), rs.getString("text"),
+                        rs.getBytes("token_offsets"), null);
+                texts.put(rs.getInt("page_id"), stored);
+                cache.put(rs.getInt("page_id"), stored);
+            }, chunk.toArray());
+        }
+        missing.removeAll(texts.keySet());
+        if (!missing.isEmpty()) {
+            texts.putAll(parsePages(missing, lemmas));
+        }
+        return texts;
+    }
+
+    // Страницы, проиндексированные до появления page_text: HTML читается (и при необходимости
+    // распаковывается) только здесь и разбирается на лету
+    private Map<Integer, StoredText> parsePages(List<Integer> pageIds, List<String> lemmas) {
+        Map<Integer, StoredText> texts = new HashMap<>(pageIds.size() * 2);
+        contentStore.load(pageIds).forEach((pageId, content) -> {
+            HtmlTextExtractor.Result extracted = HtmlTextExtractor.extract(content, null);
+            String text = extracted.getText();
+            IntArrayList[] found = new IntArrayList[lemmas.size()];
+            TextProcessor.forEachLemma(text, (lemma, start, end) -> {
+                int index = lemmas.indexOf(lemma);
+                if (index >= 0) {
+                    if (found[index] == null) {
+                        found[index] = new IntArrayList(4);
+                    }
+                    found[index].add(start);
+                    found[index].add(end);
+                }
+            });
+            int[][] positions = new int[found.length][];
+            for (int i = 0; i < found.length; i++) {
+                positions[i] = found[i] == null ? null : found[i].toArray();
+            }
+            texts.put(pageId, new StoredText(extracted.getTitle(), text, null, positions));
+        });
+        return texts;
+    }
+
+    private String buildSnippet(String text, int[][] positions) {
+        if (positions == null) {
+            return "";
+        }
+        Hit[] hits = mergeHits(positions);
+        if (hits.length == 0) {
+            return "";
+        }
+        // Два указателя: окно длиной не больше snippetLength с максимумом разных слов запроса
+        int[] counts = new int[positions.length];
+        int distinct = 0;
+        int bestFrom = 0;
+        int bestTo = 0;
+        int bestDistinct = 0;
+        int left = 0;
+        for (int right = 0; right < hits.length; right++) {
+            if (counts[hits[right].lemma]++ == 0) {
+                distinct++;
+            }
+            while (left < right && hits[right].end - hits[left].start > snippetLength) {
+                if (--counts[hits[left].lemma] == 0) {
+                    distinct--;
+                }
+                left++;
+            }
+            if (distinct > bestDistinct || (distinct == bestDistinct && right - left > bestTo - bestFrom)) {
+                bestDistinct = distinct;
+                bestFrom = left;
+                bestTo = right;
+            }
+        }
+
+        // Окно центрируется вокруг найденных слов и выравнивается по границам слов
+        int span = hits[bestTo].end - hits[bestFrom].start;
+        int from = Math.max(0, hits[bestFrom].start - (snippetLength - span) / 2);
+        int to = Math.min(text.length(), from + snippetLength);
+        from = Math.max(0, Math.min(from, to - snippetLength));
+        if (from > 0 && text.charAt(from - 1) != ' ') {
+            int space = text.indexOf(' ', from);
+            from = space < 0 || space >= hits[bestFrom].start ? hits[bestFrom].start : space + 1;
+        }
+        if (to < text.length()) {
+            int space = text.lastIndexOf(' ', to);
+            to = space <= hits[bestTo].end ? hits[bestTo].end : space;
+        }
+
+        StringBuilder snippet = new StringBuilder(to - from + 32);
+        if (from > 0) {
+            snippet.append("...");
+        }
+        int last = from;
+        for (Hit hit : hits) {
+            if (hit.start < last || hit.end > to) {
+                continue;
+            }
+            appendEscaped(snippet, text, last, hit.start);
+            snippet.append("<b>");
+            appendEscaped(snippet, text, hit.start, hit.end);
+            snippet.append("</b>");
+            last = hit.end;
+        }
+        appendEscaped(snippet, text, last, to);
+        if (to < text.length()) {
+            snippet.append("...");
+        }
+        return snippet.toString();
+    }
+
+    private static Hit[] mergeHits(int[][] positions) {
+        List<Hit> hits = new ArrayList<>();
+        for (int lemma = 0; lemma < positions.length; lemma++) {
+            int[] offsets = positions[lemma];
+            if (offsets == null) {
+                continue;
+            }
+            for (int i = 0; i < offsets.length; i += 2) {
+                hits.add(new Hit(offsets[i], offsets[i + 1], lemma));
+            }
+        }
+        Hit[] sorted = hits.toArray(new Hit[0]);
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.start, b.start));
+        return sorted;
+    }
+
+    private static void appendEscaped(StringBuilder out, String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    // Заголовок и сниппет страницы выдачи
+    public static final class Snippet {
+        private final String title;
+        private final String text;
+
+        Snippet(String title, String text) {
+            this.title = title;
+            this.text = text;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    // Сохранённый текст страницы: либо с таблицей позиций, либо с позициями, найденными на лету
+    private static final class StoredText {
+        private final String title;
+        private final String text;
+        private final byte[] offsets;
+        private final int[][] positions;
+
+        StoredText(String title, String text, byte[] offsets, int[][] positions) {
+            this.title = title;
+            this.text = text;
+            this.offsets = offsets;
+            this.positions = positions;
+        }
+    }
+
+    private static final class Hit {
+        private final int start;
+        private final int end;
+        private final int lemma;
+
+        Hit(int start, int end, int lemma) {
+            this.start = start;
+            this.end = end;
+            this.lemma = lemma;
+        }
+    }
+}
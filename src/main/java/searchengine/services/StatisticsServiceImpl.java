@@ -2,53 +2,52 @@ package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import searchengine.config.ConfigSite;
 import searchengine.config.SitesList;
 import searchengine.dto.statistics.DetailedStatisticsItem;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
+
 import java.util.ArrayList;
-import searchengine.config.ConfigSite;
 import java.util.List;
-import java.util.Random;
 
+/**
+ * Статистика собирается только из памяти (SiteStatistics): запрос не обращается к базе.
+ */
 @Service
 @RequiredArgsConstructor
 public class StatisticsServiceImpl implements StatisticsService {
 
-    private final Random random = new Random();
     private final SitesList sites;
+    private final SiteStatistics siteStatistics;
+    private final IndexingService indexingService;
 
     @Override
     public StatisticsResponse getStatistics() {
-        String[] statuses = { "INDEXED", "FAILED", "INDEXING" };
-        String[] errors = {
-                "Ошибка индексации: главная страница сайта не доступна",
-                "Ошибка индексации: сайт не доступен",
-                ""
-        };
-
         TotalStatistics total = new TotalStatistics();
         total.setSites(sites.getSites().size());
-        total.setIndexing(true);
+        total.setIndexing(indexingService.isIndexingInProgress());
 
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
-        List<ConfigSite> sitesList = sites.getSites();
-        for(int i = 0; i < sitesList.size(); i++) {
-            ConfigSite site = sitesList.get(i);
+        for (ConfigSite site : sites.getSites()) {
             DetailedStatisticsItem item = new DetailedStatisticsItem();
             item.setName(site.getName());
             item.setUrl(site.getUrl());
-            int pages = random.nextInt(1_000);
-            int lemmas = pages * random.nextInt(1_000);
-            item.setPages(pages);
-            item.setLemmas(lemmas);
-            item.setStatus(statuses[i % 3]);
-            item.setError(errors[i % 3]);
-            item.setStatusTime(System.currentTimeMillis() -
-                    (random.nextInt(10_000)));
-            total.setPages(total.getPages() + pages);
-            total.setLemmas(total.getLemmas() + lemmas);
+            SiteStatistics.SiteState state = siteStatistics.site(site.getUrl());
+            if (state != null) {
+                item.setPages((int) Math.min(Integer.MAX_VALUE, siteStatistics.pages(state)));
+                item.setLemmas((int) Math.min(Integer.MAX_VALUE, siteStatistics.lemmas(state)));
+                item.setStatus(state.getStatus());
+                item.setStatusTime(state.getStatusTime());
+                item.setError(state.getLastError() == null ? "" : state.getLastError());
+            } else {
+                // Сайт ещё ни разу не индексировался
+                item.setStatus("");
+                item.setError("");
+            }
+            total.setPages(total.getPages() + item.getPages());
+            total.setLemmas(total.getLemmas() + item.getLemmas());
             detailed.add(item);
         }
 
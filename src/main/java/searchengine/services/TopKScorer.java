@@ -0,0 +1,261 @@
+package searchengine.services;
+
+import searchengine.util.PostingList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Отбор K лучших страниц по сумме рангов лемм запроса.
+ * Держит только K результатов в min-куче на примитивных массивах и пропускает
+ * страницы, которые заведомо не попадут в K (block-max WAND): до того как сдвигать
+ * курсоры остальных лемм к кандидату, сумма максимальных рангов блоков, покрывающих
+ * кандидата, сравнивается с худшим результатом кучи; если она меньше, ведущий курсор
+ * перепрыгивает за конец самого короткого из этих блоков без декодирования и пересечения.
+ * Пропуск включается, только когда найдено не меньше EXACT_HITS совпадений: до этого
+ * число найденных страниц точное, после — нижняя граница (см. isTotalHitsExact).
+ * Все буферы переиспользуются между запросами, поэтому экземпляр не потокобезопасен.
+ */
+public final class TopKScorer {
+
+    // Сколько совпадений считается точно, прежде чем включится пропуск блоков
+    public static final int EXACT_HITS = 1000;
+
+    private long[] scores = new long[16];
+    private int[] sites = new int[16];
+    private int[] pages = new int[16];
+    private int size;
+    private int k;
+
+    private PostingList[] lists = new PostingList[4];
+    private PostingList.Cursor[] cursors = new PostingList.Cursor[4];
+
+    private int totalHits;
+    private boolean totalHitsExact;
+    private long skippedBlocks;
+
+    public void reset(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Размер выдачи должен быть положительным: " + k);
+        }
+        this.k = k;
+        if (scores.length < k) {
+            int capacity = Math.max(k, scores.length * 2);
+            scores = new long[capacity];
+            sites = new int[capacity];
+            pages = new int[capacity];
+        }
+        size = 0;
+        totalHits = 0;
+        totalHitsExact = true;
+        skippedBlocks = 0;
+    }
+
+    // Пересекает списки вхождений лемм сайта и добавляет совпадения в кучу.
+    // Если какой-то леммы на сайте нет, совпадений нет.
+    public void scoreSite(int siteId, SearchIndex index, List<String> lemmas) {
+        int n = lemmas.size();
+        if (n == 0) {
+            return;
+        }
+        ensureCursorCapacity(n);
+        for (int i = 0; i < n; i++) {
+            PostingList postings = index.postings(siteId, lemmas.get(i));
+            if (postings.size() == 0) {
+                return;
+            }
+            lists[i] = postings;
+        }
+        sortBySize(n);
+        for (int i = 0; i < n; i++) {
+            cursors[i].reset(lists[i]);
+        }
+
+        PostingList.Cursor lead = cursors[0];
+        int candidate = lead.nextDoc();
+        while (candidate != PostingList.NO_MORE_DOCS) {
+            if (size == k && totalHits >= EXACT_HITS) {
+                int target = skipTarget(n, candidate);
+                if (target != candidate) {
+                    totalHitsExact = false;
+                    candidate = target == PostingList.NO_MORE_DOCS ? target : lead.advance(target);
+                    continue;
+                }
+            }
+            int next = candidate;
+            for (int i = 1; i < n; i++) {
+                int doc = cursors[i].advance(candidate);
+                if (doc != candidate) {
+                    next = doc;
+                    break;
+                }
+            }
+            if (next == PostingList.NO_MORE_DOCS) {
+                break;
+            }
+            if (next != candidate) {
+                candidate = lead.advance(next);
+                continue;
+            }
+            totalHits++;
+            long score = 0;
+            for (int i = 0; i < n; i++) {
+                score += cursors[i].rank();
+            }
+            offer(score, siteId, candidate);
+            candidate = lead.nextDoc();
+        }
+        Arrays.fill(lists, 0, n, null);
+    }
+
+    // Упорядочивает кучу по убыванию релевантности; после вызова доступны resultAt-методы
+    public void finish() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    // Всего страниц, содержащих все леммы запроса (нижняя граница, если блоки пропускались)
+    public int totalHits() {
+        return totalHits;
+    }
+
+    public boolean isTotalHitsExact() {
+        return totalHitsExact;
+    }
+
+    public int resultCount() {
+        return size;
+    }
+
+    public long skippedBlocks() {
+        return skippedBlocks;
+    }
+
+    public long scoreAt(int i) {
+        return scores[i];
+    }
+
+    public int siteAt(int i) {
+        return sites[i];
+    }
+
+    public int pageAt(int i) {
+        return pages[i];
+    }
+
+    // Первая страница, с которой стоит продолжать пересечение. Если сумма максимальных рангов
+    // блоков всех лемм, покрывающих candidate, меньше худшего результата кучи, ни одна страница
+    // до конца самого короткого из этих блоков в K не попадёт — возвращается следующая за ним.
+    // Курсоры при этом не сдвигаются
+    private int skipTarget(int n, int candidate) {
+        long bound = 0;
+        int boundary = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            int block = cursors[i].blockOf(candidate);
+            if (block < 0) {
+                return PostingList.NO_MORE_DOCS;
+            }
+            bound += cursors[i].blockMaxRank(block);
+            boundary = Math.min(boundary, cursors[i].blockLastDoc(block));
+        }
+        if (bound >= scores[0]) {
+            return candidate;
+        }
+        skippedBlocks++;
+        return boundary >= PostingList.NO_MORE_DOCS - 1 ? PostingList.NO_MORE_DOCS : boundary + 1;
+    }
+
+    private void offer(long score, int siteId, int pageId) {
+        if (size < k) {
+            scores[size] = score;
+            sites[size] = siteId;
+            pages[size] = pageId;
+            siftUp(size++);
+        } else if (worse(0, score, siteId, pageId)) {
+            scores[0] = score;
+            sites[0] = siteId;
+            pages[0] = pageId;
+            siftDown(0, size);
+        }
+    }
+
+    // Хуже ли элемент кучи i, чем кандидат; при равной релевантности выше страница с меньшим id
+    private boolean worse(int i, long score, int siteId, int pageId) {
+        if (scores[i] != score) {
+            return scores[i] < score;
+        }
+        if (sites[i] != siteId) {
+            return sites[i] > siteId;
+        }
+        return pages[i] > pageId;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(i, scores[parent], sites[parent], pages[parent])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int limit) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= limit) {
+                return;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < limit && worse(right, scores[left], sites[left], pages[left])) {
+                worst = right;
+            }
+            if (!worse(worst, scores[i], sites[i], pages[i])) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        int site = sites[a];
+        sites[a] = sites[b];
+        sites[b] = site;
+        int page = pages[a];
+        pages[a] = pages[b];
+        pages[b] = page;
+    }
+
+    // Сортировка вставками: лемм в запросе немного, а компаратор потребовал бы аллокаций
+    private void sortBySize(int n) {
+        for (int i = 1; i < n; i++) {
+            PostingList current = lists[i];
+            int j = i - 1;
+            while (j >= 0 && lists[j].size() > current.size()) {
+                lists[j + 1] = lists[j];
+                j--;
+            }
+            lists[j + 1] = current;
+        }
+    }
+
+    private void ensureCursorCapacity(int n) {
+        if (cursors.length < n) {
+            lists = Arrays.copyOf(lists, n);
+            cursors = Arrays.copyOf(cursors, n);
+        }
+        for (int i = 0; i < n; i++) {
+            if (cursors[i] == null) {
+                cursors[i] = new PostingList.Cursor();
+            }
+        }
+    }
+}
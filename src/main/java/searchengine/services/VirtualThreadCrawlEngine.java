@@ -0,0 +1,112 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Site;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Обход сайта на виртуальных потоках: каждый URL обрабатывается в отдельном
+ * виртуальном потоке, поэтому задержки и ожидание сети не занимают потоки-носители.
+ * Число одновременных запросов ограничено семафором на каждый хост,
+ * общим для всех сайтов из indexing-settings.sites.
+ */
+@Component
+public class VirtualThreadCrawlEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadCrawlEngine.class);
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final CrawlerSettings crawlerSettings;
+    private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final Set<ExecutorService> activeExecutors = ConcurrentHashMap.newKeySet();
+
+    public VirtualThreadCrawlEngine(CrawlerSettings crawlerSettings) {
+        this.crawlerSettings = crawlerSettings;
+    }
+
+    // Обходит сайт, пока очередь не опустеет и все запущенные загрузки не завершатся
+    // Диспетчер выдаёт URL на загрузку только в момент, когда хост снова доступен
+    // по расписанию PolitenessScheduler, поэтому сами загрузки не ждут и не спят.
+    public void crawl(CrawlContext context) throws InterruptedException {
+        Site site = context.getSite();
+        CrawlFrontier frontier = context.getFrontier();
+        IndexingService indexingService = context.getIndexingService();
+        AtomicInteger inFlight = new AtomicInteger();
+        ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("crawl-" + site.getId() + "-", 0).factory());
+        activeExecutors.add(executor);
+        try {
+            while (indexingService.isIndexingInProgress()) {
+                String next = frontier.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    // Сначала проверяем счётчик: задача добавляет ссылки в очередь до своего завершения
+                    if (inFlight.get() == 0 && frontier.pendingSize() == 0) {
+                        break;
+                    }
+                    continue;
+                }
+                Semaphore permits = permitsFor(next);
+                permits.acquire();
+                try {
+                    context.getPolitenessScheduler().awaitTurn(next);
+                } catch (InterruptedException e) {
+                    permits.release();
+                    throw e;
+                }
+                inFlight.incrementAndGet();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            new PageCrawler(context, next).crawlPage();
+                        } catch (RuntimeException e) {
+                            logger.error("Ошибка обработки URL {}: ", next, e);
+                        } finally {
+                            inFlight.decrementAndGet();
+                            permits.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    inFlight.decrementAndGet();
+                    permits.release();
+                    throw e;
+                }
+            }
+        } finally {
+            executor.close();
+            activeExecutors.remove(executor);
+        }
+    }
+
+    // Прерывает все загрузки, запущенные движком (остановка индексации)
+    public void stopAll() {
+        for (ExecutorService executor : activeExecutors) {
+            executor.shutdownNow();
+        }
+    }
+
+    private Semaphore permitsFor(String url) {
+        return hostPermits.computeIfAbsent(hostOf(url),
+                host -> new Semaphore(Math.max(1, crawlerSettings.getMaxConnectionsPerHost())));
+    }
+
+    static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? url : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+}
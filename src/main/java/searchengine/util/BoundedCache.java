@@ -0,0 +1,68 @@
+package searchengine.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Потокобезопасный кэш ограниченного размера из двух поколений.
+ * Новые и повторно прочитанные записи попадают в «горячее» поколение;
+ * когда оно заполняется, «холодное» выбрасывается целиком, а горячее
+ * становится холодным. Это дешёвое приближение LRU без общей блокировки на чтение.
+ */
+public final class BoundedCache<K, V> {
+
+    private final int generationSize;
+    private volatile ConcurrentHashMap<K, V> hot = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<K, V> cold = new ConcurrentHashMap<>();
+
+    public BoundedCache(int maxSize) {
+        this.generationSize = Math.max(1, maxSize / 2);
+    }
+
+    public V get(K key) {
+        return get(key, UnaryOperator.identity());
+    }
+
+    // Поиск по временному ключу (например, изменяемому CharSlice): запись, перенесённая
+    // из холодного поколения в горячее, сохраняется под постоянной копией ключа
+    public V get(K key, UnaryOperator<K> storedKey) {
+        V value = hot.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = cold.get(key);
+        if (value != null) {
+            put(storedKey.apply(key), value);
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        ConcurrentHashMap<K, V> current = hot;
+        current.put(key, value);
+        if (current.size() >= generationSize) {
+            rotate(current);
+        }
+    }
+
+    public void invalidate(K key) {
+        hot.remove(key);
+        cold.remove(key);
+    }
+
+    public synchronized void clear() {
+        hot = new ConcurrentHashMap<>();
+        cold = new ConcurrentHashMap<>();
+    }
+
+    public int size() {
+        return hot.size() + cold.size();
+    }
+
+    private synchronized void rotate(ConcurrentHashMap<K, V> full) {
+        if (hot == full) {
+            cold = full;
+            hot = new ConcurrentHashMap<>();
+        }
+    }
+}
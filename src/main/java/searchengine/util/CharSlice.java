@@ -0,0 +1,91 @@
+package searchengine.util;
+
+import java.util.Arrays;
+
+/**
+ * Фрагмент массива символов как ключ хэш-таблицы. Изменяемое представление
+ * (wrap) указывает прямо в чужой буфер и служит для поиска без создания строки;
+ * в таблице хранится только неизменяемая копия (copyOf). Хэш совпадает с
+ * String.hashCode того же текста, равенство — посимвольное между фрагментами.
+ */
+public final class CharSlice implements CharSequence {
+
+    private char[] chars;
+    private int length;
+    private int hash;
+
+    private CharSlice(char[] chars, int length) {
+        this.chars = chars;
+        this.length = length;
+        this.hash = hash(chars, length);
+    }
+
+    // Представление для поиска; буфер не копируется и должен жить, пока идёт поиск
+    public static CharSlice view() {
+        return new CharSlice(new char[0], 0);
+    }
+
+    public static CharSlice copyOf(char[] buffer, int length) {
+        return new CharSlice(Arrays.copyOf(buffer, length), length);
+    }
+
+    // Направляет представление на buffer[0..length)
+    public CharSlice wrap(char[] buffer, int length) {
+        this.chars = buffer;
+        this.length = length;
+        this.hash = hash(buffer, length);
+        return this;
+    }
+
+    // Неизменяемая копия для хранения в таблице
+    public CharSlice copy() {
+        return copyOf(chars, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CharSlice other)) {
+            return false;
+        }
+        return hash == other.hash && Arrays.equals(chars, 0, length, other.chars, 0, other.length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private static int hash(char[] buffer, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + buffer[i];
+        }
+        return h;
+    }
+}
@@ -0,0 +1,47 @@
+package searchengine.util;
+
+import java.util.Arrays;
+
+/**
+ * Кэш прямого отображения, ключ которого — фрагмент массива символов.
+ * Поиск не создаёт строку: сравниваются символы буфера с сохранённой копией.
+ * При коллизии старая запись вытесняется. Не потокобезопасен: по одному на поток.
+ */
+public final class CharSliceCache<V> {
+
+    private final char[][] keys;
+    private final Object[] values;
+    private final int mask;
+
+    public CharSliceCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        keys = new char[size][];
+        values = new Object[size];
+        mask = size - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(char[] buffer, int length) {
+        int slot = slot(buffer, length);
+        char[] key = keys[slot];
+        if (key != null && Arrays.equals(key, 0, key.length, buffer, 0, length)) {
+            return (V) values[slot];
+        }
+        return null;
+    }
+
+    public void put(char[] buffer, int length, V value) {
+        int slot = slot(buffer, length);
+        keys[slot] = Arrays.copyOf(buffer, length);
+        values[slot] = value;
+    }
+
+    private int slot(char[] buffer, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + buffer[i];
+        }
+        h *= 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
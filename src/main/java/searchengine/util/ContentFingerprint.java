@@ -0,0 +1,74 @@
+package searchengine.util;
+
+/**
+ * Отпечатки содержимого страницы.
+ * Точный отпечаток — 64-битный FNV-1a по байтам ответа, считается по мере поступления данных.
+ * SimHash — 64-битный отпечаток текста по парам соседних слов: у почти одинаковых
+ * текстов он отличается в немногих битах, что и используется для поиска почти-дубликатов.
+ */
+public final class ContentFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // SimHash по слишком короткому тексту неустойчив: такие страницы сравниваются только точно
+    public static final int MIN_SHINGLES = 16;
+    public static final long NO_SIMHASH = 0L;
+
+    private long hash = FNV_OFFSET;
+    private long length;
+
+    public void update(byte[] bytes, int offset, int count) {
+        long h = hash;
+        for (int i = offset; i < offset + count; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= FNV_PRIME;
+        }
+        hash = h;
+        length += count;
+    }
+
+    public long value() {
+        return UrlFingerprint.mix(hash ^ length);
+    }
+
+    public static long of(byte[] bytes) {
+        ContentFingerprint fingerprint = new ContentFingerprint();
+        fingerprint.update(bytes, 0, bytes.length);
+        return fingerprint.value();
+    }
+
+    // SimHash видимого текста; NO_SIMHASH, если слов слишком мало
+    public static long simHash(CharSequence text) {
+        int[] weights = new int[64];
+        long[] state = new long[2]; // предыдущее слово и число пар
+        new Tokenizer().tokenize(text, (buffer, length, start, end, cyrillic) -> {
+            long word = FNV_OFFSET;
+            for (int i = 0; i < length; i++) {
+                word ^= buffer[i];
+                word *= FNV_PRIME;
+            }
+            if (state[1]++ > 0) {
+                long shingle = UrlFingerprint.mix(state[0] * 31 + word);
+                for (int bit = 0; bit < 64; bit++) {
+                    weights[bit] += ((shingle >>> bit) & 1) != 0 ? 1 : -1;
+                }
+            }
+            state[0] = word;
+        });
+        if (state[1] - 1 < MIN_SHINGLES) {
+            return NO_SIMHASH;
+        }
+        long simHash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+        return simHash == NO_SIMHASH ? 1L : simHash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
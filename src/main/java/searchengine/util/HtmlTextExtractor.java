@@ -0,0 +1,413 @@
+package searchengine.util;
+
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Однопроходное извлечение из HTML видимого текста, заголовка и ссылок без построения DOM.
+ * Теги просматриваются последовательно: содержимое script/style/template/noscript
+ * и комментарии пропускаются, блочные теги и br дают пробел между словами, пробельные
+ * символы схлопываются, сущности раскрываются. Результат совпадает с Document.text()
+ * Jsoup для обычных страниц, но в памяти держится только текст, а не дерево узлов.
+ */
+public final class HtmlTextExtractor {
+
+    private static final Set<String> SKIPPED = Set.of("script", "style", "template", "noscript", "svg");
+    private static final Set<String> BLOCKS = Set.of(
+            "address", "article", "aside", "blockquote", "br", "dd", "div", "dl", "dt", "fieldset", "figcaption",
+            "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "li", "main", "nav",
+            "ol", "option", "p", "pre", "section", "table", "tbody", "td", "tfoot", "th", "thead", "title", "tr",
+            "ul", "body", "head", "html", "img", "input", "button", "select", "textarea", "label");
+    private static final Map<String, Character> ENTITIES = Map.ofEntries(
+            Map.entry("amp", '&'), Map.entry("lt", '<'), Map.entry("gt", '>'), Map.entry("quot", '"'),
+            Map.entry("apos", '\''), Map.entry("nbsp", '\u00A0'), Map.entry("laquo", '«'), Map.entry("raquo", '»'),
+            Map.entry("mdash", '—'), Map.entry("ndash", '–'), Map.entry("hellip", '…'), Map.entry("copy", '©'),
+            Map.entry("reg", '®'), Map.entry("trade", '™'), Map.entry("bull", '•'), Map.entry("middot", '·'),
+            Map.entry("ldquo", '“'), Map.entry("rdquo", '”'), Map.entry("lsquo", '‘'), Map.entry("rsquo", '’'),
+            Map.entry("bdquo", '„'), Map.entry("times", '×'), Map.entry("deg", '°'), Map.entry("euro", '€'),
+            Map.entry("rub", '₽'), Map.entry("shy", '\u00AD'), Map.entry("numero", '№'));
+    private static final int MAX_ENTITY_LENGTH = 10;
+    private static final int CHARSET_SNIFF_BYTES = 2048;
+
+    private HtmlTextExtractor() {
+    }
+
+    // baseUrl — адрес страницы для разрешения относительных ссылок; null, если ссылки не нужны
+    public static Result extract(String html, String baseUrl) {
+        Result result = new Result(baseUrl != null);
+        URI base = baseUrl == null ? null : baseUri(baseUrl);
+        TextBuilder text = new TextBuilder(Math.min(html.length() / 4 + 16, 1 << 20));
+        int n = html.length();
+        int i = 0;
+        while (i < n) {
+            char c = html.charAt(i);
+            if (c != '<') {
+                int next = html.indexOf('<', i);
+                if (next < 0) {
+                    next = n;
+                }
+                text.appendDecoded(html, i, next);
+                i = next;
+                continue;
+            }
+            if (html.startsWith("<!--", i)) {
+                int end = html.indexOf("-->", i + 4);
+                i = end < 0 ? n : end + 3;
+                continue;
+            }
+            if (i + 1 < n && (html.charAt(i + 1) == '!' || html.charAt(i + 1) == '?')) {
+                int end = html.indexOf('>', i);
+                i = end < 0 ? n : end + 1;
+                continue;
+            }
+            boolean closing = i + 1 < n && html.charAt(i + 1) == '/';
+            int nameStart = i + (closing ? 2 : 1);
+            int nameEnd = nameStart;
+            while (nameEnd < n && isNameChar(html.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            if (nameEnd == nameStart || !Character.isLetter(html.charAt(nameStart))) {
+                // Одиночный '<' в тексте
+                text.appendDecoded(html, i, i + 1);
+                i++;
+                continue;
+            }
+            String name = html.substring(nameStart, nameEnd).toLowerCase(Locale.ROOT);
+            int tagEnd = findTagEnd(html, nameEnd);
+            boolean selfClosing = tagEnd > 0 && html.charAt(tagEnd - 1) == '/';
+            i = tagEnd + 1;
+            if (BLOCKS.contains(name)) {
+                text.space();
+            }
+            if (closing) {
+                continue;
+            }
+            switch (name) {
+                case "a" -> {
+                    if (result.links != null) {
+                        String href = attribute(html, nameEnd, tagEnd, "href");
+                        String link = href == null ? null : resolve(base, href);
+                        if (link != null) {
+                            result.links.add(link);
+                        }
+                    }
+                }
+                case "base" -> {
+                    String href = attribute(html, nameEnd, tagEnd, "href");
+                    if (base != null && href != null) {
+                        String resolved = resolve(base, href);
+                        if (resolved != null) {
+                            base = baseUri(resolved);
+                        }
+                    }
+                }
+                case "title" -> {
+                    int end = indexOfIgnoreCase(html, "</title", i);
+                    int contentEnd = end < 0 ? n : end;
+                    if (result.title.isEmpty()) {
+                        TextBuilder title = new TextBuilder(contentEnd - i);
+                        title.appendDecoded(html, i, contentEnd);
+                        result.title = title.toString();
+                    }
+                    // Как и в Jsoup, заголовок входит в текст документа
+                    text.appendDecoded(html, i, contentEnd);
+                    text.space();
+                    i = end < 0 ? n : findTagEnd(html, end + 2) + 1;
+                }
+                default -> {
+                    if (!selfClosing && SKIPPED.contains(name)) {
+                        int end = indexOfIgnoreCase(html, "</" + name, i);
+                        i = end < 0 ? n : findTagEnd(html, end + 2) + 1;
+                    }
+                }
+            }
+        }
+        result.text = text.toString();
+        return result;
+    }
+
+    // Кодировка страницы: из заголовка Content-Type, иначе из meta в начале документа, иначе UTF-8
+    public static Charset charsetOf(byte[] body, String declared) {
+        Charset charset = forName(declared);
+        if (charset != null) {
+            return charset;
+        }
+        String head = new String(body, 0, Math.min(body.length, CHARSET_SNIFF_BYTES), StandardCharsets.ISO_8859_1)
+                .toLowerCase(Locale.ROOT);
+        int at = head.indexOf("charset=");
+        if (at >= 0) {
+            int from = at + "charset=".length();
+            while (from < head.length() && (head.charAt(from) == '"' || head.charAt(from) == '\'')) {
+                from++;
+            }
+            int to = from;
+            while (to < head.length() && (Character.isLetterOrDigit(head.charAt(to))
+                    || head.charAt(to) == '-' || head.charAt(to) == '_')) {
+                to++;
+            }
+            charset = forName(head.substring(from, to));
+        }
+        return charset == null ? StandardCharsets.UTF_8 : charset;
+    }
+
+    private static Charset forName(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        try {
+            return Charset.forName(name.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == ':' || c == '_';
+    }
+
+    // Позиция '>' конца тега с учётом кавычек в значениях атрибутов
+    private static int findTagEnd(String html, int from) {
+        char quote = 0;
+        for (int i = from; i < html.length(); i++) {
+            char c = html.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            }
+        }
+        return html.length() - 1;
+    }
+
+    private static int indexOfIgnoreCase(String html, String needle, int from) {
+        int last = html.length() - needle.length();
+        char first = needle.charAt(0);
+        for (int i = from; i <= last; i++) {
+            if (html.charAt(i) == first && html.regionMatches(true, i, needle, 0, needle.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Значение атрибута внутри тега [from, to) или null
+    private static String attribute(String html, int from, int to, String wanted) {
+        int i = from;
+        while (i < to) {
+            char c = html.charAt(i);
+            if (Character.isWhitespace(c) || c == '\u00A0') {
+                i++;
+                continue;
+            }
+            int nameStart = i;
+            while (i < to && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '='
+                    && html.charAt(i) != '/') {
+                i++;
+            }
+            int nameEnd = i;
+            while (i < to && Character.isWhitespace(html.charAt(i))) {
+                i++;
+            }
+            if (i < to && html.charAt(i) == '=') {
+                i++;
+                while (i < to && Character.isWhitespace(html.charAt(i))) {
+                    i++;
+                }
+                int valueStart;
+                int valueEnd;
+                if (i < to && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                    char quote = html.charAt(i);
+                    valueStart = i + 1;
+                    valueEnd = html.indexOf(quote, valueStart);
+                    if (valueEnd < 0 || valueEnd > to) {
+                        valueEnd = to;
+                    }
+                    i = valueEnd + 1;
+                } else {
+                    valueStart = i;
+                    while (i < to && !Character.isWhitespace(html.charAt(i))) {
+                        i++;
+                    }
+                    valueEnd = i;
+                }
+                if (nameEnd - nameStart == wanted.length()
+                        && html.regionMatches(true, nameStart, wanted, 0, wanted.length())) {
+                    TextBuilder decoded = new TextBuilder(valueEnd - valueStart);
+                    decoded.appendDecodedRaw(html, valueStart, valueEnd);
+                    return decoded.toString();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static URI baseUri(String url) {
+        try {
+            URI uri = new URI(url.replace(" ", "%20"));
+            // У адреса без пути относительные ссылки разрешаются от корня
+            return uri.getRawPath() == null || uri.getRawPath().isEmpty() ? uri.resolve("/") : uri;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String resolve(URI base, String href) {
+        String trimmed = href.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        try {
+            URI link = new URI(trimmed.replace(" ", "%20"));
+            return base == null ? link.toString() : base.resolve(link).toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Текст со схлопнутыми пробелами: подряд идущие пробельные символы дают один пробел
+    private static final class TextBuilder {
+        private final StringBuilder out;
+        private boolean pendingSpace;
+
+        TextBuilder(int capacity) {
+            out = new StringBuilder(Math.max(16, capacity));
+        }
+
+        void space() {
+            pendingSpace = true;
+        }
+
+        void appendDecoded(String html, int from, int to) {
+            for (int i = from; i < to; i++) {
+                char c = html.charAt(i);
+                if (c == '&') {
+                    int end = decodeEntity(html, i, to);
+                    if (end > i) {
+                        i = end - 1;
+                        continue;
+                    }
+                }
+                append(c);
+            }
+        }
+
+        // Раскрытие сущностей без схлопывания пробелов (значения атрибутов)
+        void appendDecodedRaw(String html, int from, int to) {
+            for (int i = from; i < to; i++) {
+                char c = html.charAt(i);
+                if (c == '&') {
+                    int end = decodeEntity(html, i, to);
+                    if (end > i) {
+                        i = end - 1;
+                        continue;
+                    }
+                }
+                out.append(c);
+            }
+        }
+
+        // Раскрывает сущность, начинающуюся с '&' в позиции at; возвращает позицию после неё или at
+        private int decodeEntity(String html, int at, int to) {
+            int semicolon = -1;
+            int limit = Math.min(to, at + MAX_ENTITY_LENGTH + 2);
+            for (int i = at + 1; i < limit; i++) {
+                char c = html.charAt(i);
+                if (c == ';') {
+                    semicolon = i;
+                    break;
+                }
+                if (!Character.isLetterOrDigit(c) && c != '#') {
+                    break;
+                }
+            }
+            if (semicolon < 0) {
+                return at;
+            }
+            int codePoint;
+            if (html.charAt(at + 1) == '#') {
+                try {
+                    boolean hex = at + 2 < semicolon && (html.charAt(at + 2) == 'x' || html.charAt(at + 2) == 'X');
+                    codePoint = hex
+                            ? Integer.parseInt(html, at + 3, semicolon, 16)
+                            : Integer.parseInt(html, at + 2, semicolon, 10);
+                } catch (NumberFormatException e) {
+                    return at;
+                }
+                if (!Character.isValidCodePoint(codePoint)) {
+                    return at;
+                }
+            } else {
+                Character named = ENTITIES.get(html.substring(at + 1, semicolon));
+                if (named == null) {
+                    return at;
+                }
+                codePoint = named;
+            }
+            if (Character.isBmpCodePoint(codePoint)) {
+                append((char) codePoint);
+            } else {
+                appendRaw(Character.toChars(codePoint));
+            }
+            return semicolon + 1;
+        }
+
+        private void append(char c) {
+            if (Character.isWhitespace(c) || c == '\u00A0') {
+                pendingSpace = true;
+                return;
+            }
+            if (pendingSpace && out.length() > 0) {
+                out.append(' ');
+            }
+            pendingSpace = false;
+            out.append(c);
+        }
+
+        private void appendRaw(char[] chars) {
+            if (pendingSpace && out.length() > 0) {
+                out.append(' ');
+            }
+            pendingSpace = false;
+            out.append(chars);
+        }
+
+        @Override
+        public String toString() {
+            return out.toString();
+        }
+    }
+
+    // Результат разбора страницы
+    public static final class Result {
+        private String title = "";
+        private String text = "";
+        private final List<String> links;
+
+        Result(boolean collectLinks) {
+            links = collectLinks ? new ArrayList<>() : null;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        // Абсолютные адреса ссылок a[href] в порядке появления; пустой список, если baseUrl не задан
+        public List<String> getLinks() {
+            return links == null ? List.of() : links;
+        }
+    }
+}
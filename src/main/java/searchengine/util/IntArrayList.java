@@ -0,0 +1,43 @@
+package searchengine.util;
+
+import java.util.Arrays;
+
+/**
+ * Растущий массив int без упаковки в Integer.
+ */
+public final class IntArrayList {
+
+    private int[] values;
+    private int size;
+
+    public IntArrayList() {
+        this(8);
+    }
+
+    public IntArrayList(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,125 @@
+package searchengine.util;
+
+import java.util.function.Consumer;
+
+/**
+ * Хеш-таблица «объект → int» с открытой адресацией и линейным пробированием.
+ * Значения хранятся в массиве int без упаковки в Integer; удаление не поддерживается.
+ */
+public final class ObjectIntHashMap<K> {
+
+    // Получатель пары ключ–значение при обходе
+    public interface EntryConsumer<K> {
+        void accept(K key, int value);
+    }
+
+    private Object[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public ObjectIntHashMap() {
+        this(16);
+    }
+
+    public ObjectIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new Object[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    // Прибавляет delta к значению ключа (отсутствующий ключ считается равным 0) и возвращает результат
+    public int addTo(K key, int delta) {
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            values[slot] = delta;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return delta;
+        }
+        return values[slot] += delta;
+    }
+
+    public void put(K key, int value) {
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    // Значение ключа или defaultValue, если ключа нет
+    public int get(Object key, int defaultValue) {
+        int slot = slot(key);
+        return keys[slot] == null ? defaultValue : values[slot];
+    }
+
+    public boolean containsKey(Object key) {
+        return keys[slot(key)] != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super K> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                consumer.accept((K) keys[i], values[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachKey(Consumer<? super K> consumer) {
+        for (Object key : keys) {
+            if (key != null) {
+                consumer.accept((K) key);
+            }
+        }
+    }
+
+    private int slot(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (keys[slot] != null && !keys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("{");
+        forEach((key, value) -> out.append(out.length() > 1 ? ", " : "").append(key).append('=').append(value));
+        return out.append('}').toString();
+    }
+}
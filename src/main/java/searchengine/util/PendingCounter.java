@@ -0,0 +1,50 @@
+package searchengine.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Счётчик незавершённой работы, которого можно дождаться до нуля.
+ */
+public final class PendingCounter {
+
+    private long count;
+
+    public synchronized void add(int delta) {
+        count += delta;
+        if (count <= 0) {
+            count = 0;
+            notifyAll();
+        }
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void decrement() {
+        add(-1);
+    }
+
+    public synchronized long get() {
+        return count;
+    }
+
+    public synchronized void awaitZero() throws InterruptedException {
+        while (count > 0) {
+            wait();
+        }
+    }
+
+    // Возвращает false, если за отведённое время работа не завершилась
+    public synchronized boolean awaitZero(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (count > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,269 @@
+package searchengine.util;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Неизменяемый список вхождений леммы: идентификаторы страниц по возрастанию
+ * (дельты в кодировке varint) и ранги в примитивном массиве.
+ * Для пропуска вперёд список разбит на блоки по {@value #BLOCK_SIZE} вхождений,
+ * для каждого блока хранится последний идентификатор, смещение в байтах
+ * и максимальный ранг (верхняя граница вклада блока в релевантность).
+ */
+public final class PostingList {
+
+    public static final int BLOCK_SIZE = 64;
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+    // Ранги хранятся целыми числами с фиксированной точкой
+    public static final int RANK_SCALE = 100;
+
+    public static final PostingList EMPTY = new PostingList(new byte[0], 0, new int[0], new int[0], new int[0], new int[0]);
+
+    private final byte[] deltas;
+    private final int size;
+    private final int[] ranks;
+    private final int[] blockLastDoc;
+    private final int[] blockOffset;
+    private final int[] blockMaxRank;
+    private final int maxRank;
+
+    private PostingList(byte[] deltas, int size, int[] ranks, int[] blockLastDoc, int[] blockOffset, int[] blockMaxRank) {
+        this.deltas = deltas;
+        this.size = size;
+        this.ranks = ranks;
+        this.blockLastDoc = blockLastDoc;
+        this.blockOffset = blockOffset;
+        this.blockMaxRank = blockMaxRank;
+        int max = 0;
+        for (int rank : blockMaxRank) {
+            max = Math.max(max, rank);
+        }
+        this.maxRank = max;
+    }
+
+    // Строит список из отсортированных по возрастанию уникальных идентификаторов
+    public static PostingList of(int[] docs, int[] scaledRanks, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] lastDoc = new int[blocks];
+        int[] offsets = new int[blocks];
+        int[] maxRanks = new int[blocks];
+        byte[] buffer = new byte[size * 2 + 8];
+        int length = 0;
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            if (i % BLOCK_SIZE == 0) {
+                offsets[i / BLOCK_SIZE] = length;
+            }
+            if (buffer.length - length < 5) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length = writeVarInt(buffer, length, docs[i] - previous);
+            previous = docs[i];
+            lastDoc[i / BLOCK_SIZE] = docs[i];
+            maxRanks[i / BLOCK_SIZE] = Math.max(maxRanks[i / BLOCK_SIZE], scaledRanks[i]);
+        }
+        return new PostingList(Arrays.copyOf(buffer, length), size, Arrays.copyOf(scaledRanks, size), lastDoc, offsets, maxRanks);
+    }
+
+    public static int scaleRank(float rank) {
+        return Math.round(rank * RANK_SCALE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int maxRank() {
+        return maxRank;
+    }
+
+    public int rankAt(int position) {
+        return ranks[position];
+    }
+
+    public Cursor cursor() {
+        Cursor cursor = new Cursor();
+        cursor.reset(this);
+        return cursor;
+    }
+
+    public int[] decodeDocs() {
+        int[] docs = new int[size];
+        int offset = 0;
+        int doc = 0;
+        for (int i = 0; i < size; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = deltas[offset++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            doc += value;
+            docs[i] = doc;
+        }
+        return docs;
+    }
+
+    // Новый список с добавленными вхождениями (в любом порядке); при совпадении
+    // идентификатора страницы побеждает добавляемое значение
+    public PostingList merge(int[] addDocs, int[] addRanks, int addCount) {
+        // Ключ — страница и порядковый номер вхождения: повторы одной страницы остаются в порядке добавления
+        long[] added = new long[addCount];
+        for (int i = 0; i < addCount; i++) {
+            added[i] = ((long) addDocs[i] << 32) | i;
+        }
+        Arrays.sort(added);
+        int[] oldDocs = decodeDocs();
+        int[] docs = new int[size + addCount];
+        int[] newRanks = new int[size + addCount];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < size || j < addCount) {
+            int addDoc = j < addCount ? (int) (added[j] >>> 32) : NO_MORE_DOCS;
+            // Среди повторов внутри добавляемых берём последний добавленный
+            while (j + 1 < addCount && (int) (added[j + 1] >>> 32) == addDoc) {
+                j++;
+            }
+            int oldDoc = i < size ? oldDocs[i] : NO_MORE_DOCS;
+            if (addDoc <= oldDoc) {
+                docs[n] = addDoc;
+                newRanks[n++] = addRanks[(int) added[j++]];
+                if (addDoc == oldDoc) {
+                    i++;
+                }
+            } else {
+                docs[n] = oldDoc;
+                newRanks[n++] = ranks[i++];
+            }
+        }
+        return of(docs, newRanks, n);
+    }
+
+    // Новый список без страниц, для которых предикат вернул true
+    public PostingList without(IntPredicate removed) {
+        int[] docs = decodeDocs();
+        int[] keptDocs = new int[size];
+        int[] keptRanks = new int[size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removed.test(docs[i])) {
+                keptDocs[n] = docs[i];
+                keptRanks[n++] = ranks[i];
+            }
+        }
+        return n == size ? this : of(keptDocs, keptRanks, n);
+    }
+
+    private static int writeVarInt(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Курсор по списку. Можно переиспользовать для разных списков через reset.
+     */
+    public static final class Cursor {
+        private PostingList list;
+        private int position;
+        private int offset;
+        private int doc;
+
+        public void reset(PostingList list) {
+            this.list = list;
+            this.position = -1;
+            this.offset = 0;
+            this.doc = list.size == 0 ? NO_MORE_DOCS : 0;
+        }
+
+        public int doc() {
+            return doc;
+        }
+
+        public int position() {
+            return position;
+        }
+
+        public int rank() {
+            return list.ranks[position];
+        }
+
+        // Блок, в котором лежит первая страница с идентификатором не меньше target; курсор не сдвигается.
+        // -1, если таких страниц в списке нет
+        public int blockOf(int target) {
+            if (doc == NO_MORE_DOCS) {
+                return -1;
+            }
+            int[] lastDoc = list.blockLastDoc;
+            int block = Math.max(0, position) / BLOCK_SIZE;
+            while (block < lastDoc.length && lastDoc[block] < target) {
+                block++;
+            }
+            return block < lastDoc.length ? block : -1;
+        }
+
+        public int blockMaxRank(int block) {
+            return list.blockMaxRank[block];
+        }
+
+        public int blockLastDoc(int block) {
+            return list.blockLastDoc[block];
+        }
+
+        public int nextDoc() {
+            if (doc == NO_MORE_DOCS || ++position >= list.size) {
+                position = list.size;
+                return doc = NO_MORE_DOCS;
+            }
+            byte[] bytes = list.deltas;
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return doc += value;
+        }
+
+        // Переходит к первой странице с идентификатором не меньше target
+        public int advance(int target) {
+            if (doc != NO_MORE_DOCS && doc >= target && position >= 0) {
+                return doc;
+            }
+            if (doc == NO_MORE_DOCS) {
+                return doc;
+            }
+            int[] lastDoc = list.blockLastDoc;
+            int currentBlock = Math.max(0, position) / BLOCK_SIZE;
+            int block = currentBlock;
+            while (block < lastDoc.length && lastDoc[block] < target) {
+                block++;
+            }
+            if (block >= lastDoc.length) {
+                position = list.size;
+                return doc = NO_MORE_DOCS;
+            }
+            if (block > currentBlock || position < 0) {
+                // Прыгаем в начало нужного блока, не декодируя пропущенные
+                position = block * BLOCK_SIZE - 1;
+                offset = list.blockOffset[block];
+                doc = block == 0 ? 0 : lastDoc[block - 1];
+            }
+            while (nextDoc() < target) {
+                // Декодируем внутри блока
+            }
+            return doc;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package searchengine.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поиск почти-дубликатов по SimHash. Отпечаток делится на 4 полосы по 16 бит:
+ * если два отпечатка отличаются не более чем в 3 битах, хотя бы одна полоса
+ * у них совпадает, поэтому сравнивать приходится только с отпечатками из тех же корзин.
+ */
+public final class SimHashIndex<V> {
+
+    private static final int BANDS = 4;
+    private static final int BAND_BITS = 64 / BANDS;
+    public static final int MAX_DISTANCE = BANDS - 1;
+
+    private final List<Map<Integer, List<Entry<V>>>> bands = new ArrayList<>(BANDS);
+    private final int maxDistance;
+
+    public SimHashIndex(int maxDistance) {
+        this.maxDistance = Math.min(Math.max(0, maxDistance), MAX_DISTANCE);
+        for (int i = 0; i < BANDS; i++) {
+            bands.add(new HashMap<>());
+        }
+    }
+
+    // Значение близкого отпечатка или null; если близкого нет, отпечаток добавляется со значением value
+    public synchronized V findOrAdd(long simHash, V value) {
+        for (int band = 0; band < BANDS; band++) {
+            List<Entry<V>> bucket = bands.get(band).get(bandKey(simHash, band));
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry<V> entry : bucket) {
+                if (ContentFingerprint.distance(entry.simHash, simHash) <= maxDistance) {
+                    return entry.value;
+                }
+            }
+        }
+        Entry<V> entry = new Entry<>(simHash, value);
+        for (int band = 0; band < BANDS; band++) {
+            bands.get(band).computeIfAbsent(bandKey(simHash, band), key -> new ArrayList<>(2)).add(entry);
+        }
+        return null;
+    }
+
+    private static int bandKey(long simHash, int band) {
+        return (int) ((simHash >>> (band * BAND_BITS)) & 0xffff);
+    }
+
+    private static final class Entry<V> {
+        private final long simHash;
+        private final V value;
+
+        Entry(long simHash, V value) {
+            this.simHash = simHash;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package searchengine.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Потокобезопасное множество 64-битных значений на примитивных массивах.
+ * Пространство ключей разбито на сегменты (striping), каждый сегмент —
+ * отдельная таблица с открытой адресацией и собственной блокировкой,
+ * поэтому параллельные вставки почти не конкурируют между собой.
+ */
+public final class StripedLongHashSet {
+
+    private static final long EMPTY = 0L;
+    // Ключ 0 зарезервирован под пустую ячейку, поэтому хранится отдельным флагом
+    private static final long ZERO_SUBSTITUTE = 0x9e3779b97f4a7c15L;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder contended = new LongAdder();
+
+    public StripedLongHashSet() {
+        this(64, 1024);
+    }
+
+    public StripedLongHashSet(int stripes, int initialCapacityPerStripe) {
+        int stripeCount = Integer.highestOneBit(Math.max(1, stripes - 1) << 1);
+        int capacity = Integer.highestOneBit(Math.max(4, initialCapacityPerStripe - 1) << 1);
+        segments = new Segment[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            segments[i] = new Segment(capacity);
+        }
+        segmentMask = stripeCount - 1;
+    }
+
+    // Добавляет значение; возвращает true, если его ещё не было во множестве
+    public boolean add(long value) {
+        long key = value == EMPTY ? ZERO_SUBSTITUTE : value;
+        Segment segment = segments[(int) (key >>> 40) & segmentMask];
+        lock(segment);
+        try {
+            if (segment.add(key)) {
+                size.incrementAndGet();
+                return true;
+            }
+            return false;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public boolean contains(long value) {
+        long key = value == EMPTY ? ZERO_SUBSTITUTE : value;
+        Segment segment = segments[(int) (key >>> 40) & segmentMask];
+        lock(segment);
+        try {
+            return segment.contains(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    // Обходит значения по сегментам; сегмент на время обхода блокируется
+    public void forEach(LongConsumer action) {
+        for (Segment segment : segments) {
+            lock(segment);
+            try {
+                for (long key : segment.table) {
+                    if (key != EMPTY) {
+                        action.accept(key == ZERO_SUBSTITUTE ? EMPTY : key);
+                    }
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    // Сколько раз поток не смог сразу захватить блокировку сегмента
+    public long contendedLocks() {
+        return contended.sum();
+    }
+
+    private void lock(Segment segment) {
+        if (!segment.lock.tryLock()) {
+            contended.increment();
+            segment.lock.lock();
+        }
+    }
+
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long[] table;
+        private int count;
+
+        Segment(int capacity) {
+            table = new long[capacity];
+        }
+
+        boolean add(long key) {
+            if ((count + 1) * 2 > table.length) {
+                resize();
+            }
+            if (insert(table, key)) {
+                count++;
+                return true;
+            }
+            return false;
+        }
+
+        boolean contains(long key) {
+            int mask = table.length - 1;
+            int i = (int) key & mask;
+            while (true) {
+                long current = table[i];
+                if (current == EMPTY) {
+                    return false;
+                }
+                if (current == key) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        private void resize() {
+            long[] larger = new long[table.length << 1];
+            for (long key : table) {
+                if (key != EMPTY) {
+                    insert(larger, key);
+                }
+            }
+            table = larger;
+        }
+
+        private static boolean insert(long[] target, long key) {
+            int mask = target.length - 1;
+            int i = (int) key & mask;
+            while (true) {
+                long current = target[i];
+                if (current == EMPTY) {
+                    target[i] = key;
+                    return true;
+                }
+                if (current == key) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package searchengine.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+/**
+ * Компактная таблица «лемма → позиции слов в тексте страницы».
+ * Формат: число лемм, затем для каждой: id леммы, длина записи в байтах,
+ * число вхождений и пары (смещение начала от предыдущего вхождения, длина слова).
+ * Все числа — varint. Длина записи позволяет пропускать ненужные леммы при чтении.
+ */
+public final class TokenOffsets {
+
+    private TokenOffsets() {
+    }
+
+    // offsets: lemmaId → [start0, end0, start1, end1, ...] по возрастанию start
+    public static byte[] encode(Map<Integer, IntArrayList> offsets) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(offsets.size() * 8);
+        ByteArrayOutputStream entry = new ByteArrayOutputStream(64);
+        writeVarInt(out, offsets.size());
+        for (Map.Entry<Integer, IntArrayList> lemma : offsets.entrySet()) {
+            IntArrayList positions = lemma.getValue();
+            entry.reset();
+            writeVarInt(entry, positions.size() / 2);
+            int previous = 0;
+            for (int i = 0; i < positions.size(); i += 2) {
+                int start = positions.get(i);
+                writeVarInt(entry, start - previous);
+                writeVarInt(entry, positions.get(i + 1) - start);
+                previous = start;
+            }
+            writeVarInt(out, lemma.getKey());
+            writeVarInt(out, entry.size());
+            out.writeBytes(entry.toByteArray());
+        }
+        return out.toByteArray();
+    }
+
+    // Позиции указанных лемм: result[i] — [start, end, ...] для lemmaIds[i] или null
+    public static int[][] decode(byte[] blob, int[] lemmaIds) {
+        int[][] result = new int[lemmaIds.length][];
+        if (blob == null || blob.length == 0) {
+            return result;
+        }
+        int[] cursor = {0};
+        int lemmas = readVarInt(blob, cursor);
+        for (int l = 0; l < lemmas; l++) {
+            int lemmaId = readVarInt(blob, cursor);
+            int length = readVarInt(blob, cursor);
+            int wanted = indexOf(lemmaIds, lemmaId);
+            if (wanted < 0) {
+                cursor[0] += length;
+                continue;
+            }
+            int count = readVarInt(blob, cursor);
+            int[] positions = new int[count * 2];
+            int start = 0;
+            for (int i = 0; i < count; i++) {
+                start += readVarInt(blob, cursor);
+                positions[2 * i] = start;
+                positions[2 * i + 1] = start + readVarInt(blob, cursor);
+            }
+            result[wanted] = positions;
+        }
+        return result;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[cursor[0]++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,75 @@
+package searchengine.util;
+
+import java.util.Arrays;
+
+/**
+ * Потоковый разбор текста на слова за один проход без регулярных выражений.
+ * Словом считается непрерывная последовательность латинских или кириллических
+ * букв одного алфавита (как у шаблона [a-zA-Z]+|[а-яА-ЯёЁ]+). Слово приводится
+ * к нижнему регистру в переиспользуемый буфер, который передаётся получателю;
+ * новые строки не создаются. Экземпляр не потокобезопасен: по одному на поток.
+ */
+public final class Tokenizer {
+
+    private static final int OTHER = 0;
+    private static final int LATIN = 1;
+    private static final int CYRILLIC = 2;
+
+    // Получатель слова: buffer[0..length) — слово в нижнем регистре, start/end — его позиции в тексте.
+    // Буфер действителен только во время вызова
+    public interface TokenConsumer {
+        void accept(char[] buffer, int length, int start, int end, boolean cyrillic);
+    }
+
+    private char[] buffer = new char[64];
+
+    public void tokenize(CharSequence text, TokenConsumer consumer) {
+        int length = text.length();
+        int start = -1;
+        int alphabet = OTHER;
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            int kind = classify(c);
+            if (kind != alphabet && alphabet != OTHER) {
+                consumer.accept(buffer, size, start, i, alphabet == CYRILLIC);
+            }
+            if (kind == OTHER) {
+                alphabet = OTHER;
+                continue;
+            }
+            if (kind != alphabet) {
+                alphabet = kind;
+                start = i;
+                size = 0;
+            }
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = toLower(c);
+        }
+        if (alphabet != OTHER) {
+            consumer.accept(buffer, size, start, length, alphabet == CYRILLIC);
+        }
+    }
+
+    private static int classify(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            return LATIN;
+        }
+        if ((c >= 'а' && c <= 'я') || (c >= 'А' && c <= 'Я') || c == 'ё' || c == 'Ё') {
+            return CYRILLIC;
+        }
+        return OTHER;
+    }
+
+    private static char toLower(char c) {
+        if (c <= 'Z') {
+            return c >= 'A' ? (char) (c + ('a' - 'A')) : c;
+        }
+        if (c >= 'А' && c <= 'Я') {
+            return (char) (c + ('а' - 'А'));
+        }
+        return c == 'Ё' ? 'ё' : c;
+    }
+}
@@ -0,0 +1,86 @@
+package searchengine.util;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * Нормализация URL и вычисление 64-битного отпечатка для дедупликации.
+ * Отпечаток хранится вместо полной строки URL во множестве посещённых страниц.
+ */
+public final class UrlFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private UrlFingerprint() {
+    }
+
+    // Приводим URL к каноническому виду: схема и хост в нижнем регистре,
+    // без фрагмента, без порта по умолчанию, пустой путь заменяется на "/"
+    public static String normalize(String url) {
+        if (url == null) {
+            return null;
+        }
+        String trimmed = url.trim();
+        try {
+            URI uri = new URI(trimmed);
+            String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+            String host = uri.getHost() == null ? null : uri.getHost().toLowerCase(Locale.ROOT);
+            if (scheme == null || host == null) {
+                return stripFragment(trimmed);
+            }
+            int port = uri.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+                port = -1;
+            }
+            String path = uri.getRawPath();
+            if (path == null || path.isEmpty()) {
+                path = "/";
+            }
+            StringBuilder sb = new StringBuilder(trimmed.length());
+            sb.append(scheme).append("://").append(host);
+            if (port != -1) {
+                sb.append(':').append(port);
+            }
+            sb.append(path);
+            if (uri.getRawQuery() != null) {
+                sb.append('?').append(uri.getRawQuery());
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            return stripFragment(trimmed);
+        }
+    }
+
+    // 64-битный отпечаток нормализованного URL (FNV-1a с финальным перемешиванием)
+    public static long of(String url) {
+        return hash(normalize(url));
+    }
+
+    public static long hash(CharSequence value) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            h ^= (c & 0xff);
+            h *= FNV_PRIME;
+            h ^= (c >>> 8);
+            h *= FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    // Финализатор из MurmurHash3: равномерно распределяет биты для открытой адресации
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static String stripFragment(String url) {
+        int hash = url.indexOf('#');
+        return hash >= 0 ? url.substring(0, hash) : url;
+    }
+}
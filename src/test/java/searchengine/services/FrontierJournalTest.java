@@ -0,0 +1,114 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrontierJournalTest {
+
+    private static final String A = "https://example.com/a";
+    private static final String B = "https://example.com/b";
+    private static final String C = "https://example.com/c";
+
+    @TempDir
+    Path dir;
+
+    // Журнал с записями: A, B, C поставлены в очередь, A обработан, путь 42 подтверждён
+    private Path writeJournal() throws IOException {
+        Path file = dir.resolve("site.journal");
+        FrontierJournal journal = FrontierJournal.create(file, new FrontierJournal.Header(1, 2, false));
+        journal.enqueued(A);
+        journal.enqueued(B);
+        journal.done(A);
+        journal.confirmed(42L);
+        journal.enqueued(C);
+        journal.close();
+        return file;
+    }
+
+    private static void truncate(Path file, long bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - bytes);
+        }
+    }
+
+    @Test
+    void replaysCompleteJournal() throws IOException {
+        Path file = writeJournal();
+
+        FrontierJournal.State state = FrontierJournal.replay(file);
+
+        assertTrue(state.resumed);
+        assertEquals(List.of(B, C), List.copyOf(state.pending));
+        assertTrue(state.seen.contains(CrawlFrontier.fingerprint(A)));
+        assertTrue(state.seen.contains(CrawlFrontier.fingerprint(C)));
+        assertTrue(state.confirmed.contains(42L));
+        FrontierJournal.Header header = FrontierJournal.readHeader(file);
+        assertNotNull(header);
+        assertTrue(header.matches(1, 2, false));
+    }
+
+    @Test
+    void dropsTornLastRecord() throws IOException {
+        Path file = writeJournal();
+        // Обрыв посреди строки последней записи (C)
+        truncate(file, 3);
+
+        FrontierJournal.State state = FrontierJournal.replay(file);
+
+        assertEquals(List.of(B), List.copyOf(state.pending));
+        assertFalse(state.seen.contains(CrawlFrontier.fingerprint(C)));
+        assertTrue(state.confirmed.contains(42L));
+    }
+
+    @Test
+    void dropsTailWithTornLength() throws IOException {
+        Path file = writeJournal();
+        // От последней записи остались тип и половина длины строки
+        truncate(file, C.getBytes().length + 2);
+
+        FrontierJournal.State state = FrontierJournal.replay(file);
+
+        assertEquals(List.of(B), List.copyOf(state.pending));
+        assertTrue(state.confirmed.contains(42L));
+    }
+
+    @Test
+    void dropsGarbageTail() throws IOException {
+        Path file = writeJournal();
+        Files.write(file, new byte[]{'Z', 1, 2, 3}, StandardOpenOption.APPEND);
+
+        FrontierJournal.State state = FrontierJournal.replay(file);
+
+        assertEquals(List.of(B, C), List.copyOf(state.pending));
+    }
+
+    @Test
+    void reopenRewritesJournalWithoutTornTail() throws IOException {
+        Path file = writeJournal();
+        truncate(file, 3);
+        FrontierJournal.State state = FrontierJournal.replay(file);
+
+        FrontierJournal reopened = FrontierJournal.reopen(file, FrontierJournal.readHeader(file), records -> {
+            state.pending.forEach(records::enqueued);
+            records.confirmed(42L);
+        });
+        reopened.enqueued(C);
+        reopened.close();
+
+        FrontierJournal.State replayed = FrontierJournal.replay(file);
+        assertEquals(List.of(B, C), List.copyOf(replayed.pending));
+        assertTrue(replayed.confirmed.contains(42L));
+    }
+}
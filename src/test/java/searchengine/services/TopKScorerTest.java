@@ -0,0 +1,164 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+import searchengine.util.ObjectIntHashMap;
+import searchengine.util.PostingList;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKScorerTest {
+
+    private static final int SITE = 1;
+    private static final int GENERATION = 1;
+
+    // Индекс сайта в памяти: ranks[lemma][page] — ранг леммы на странице, 0 — леммы на странице нет
+    private static SearchIndex index(List<String> lemmas, int[][] ranks) {
+        SearchIndex index = new SearchIndex(null);
+        index.beginShadow(SITE, GENERATION);
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        for (int i = 0; i < lemmas.size(); i++) {
+            lemmaIds.put(lemmas.get(i), i + 1);
+        }
+        for (int page = 1; page < ranks[0].length; page++) {
+            ObjectIntHashMap<String> pageRanks = new ObjectIntHashMap<>();
+            for (int i = 0; i < lemmas.size(); i++) {
+                if (ranks[i][page] > 0) {
+                    pageRanks.put(lemmas.get(i), ranks[i][page]);
+                }
+            }
+            if (!pageRanks.isEmpty()) {
+                index.addPage(SITE, GENERATION, page, pageRanks, lemmaIds);
+            }
+        }
+        index.swapShadow(SITE);
+        return index;
+    }
+
+    // Ожидаемая выдача полным перебором: по убыванию суммы рангов, при равенстве — по возрастанию id
+    private static List<long[]> bruteForce(int[][] ranks, int k) {
+        List<long[]> hits = new ArrayList<>();
+        for (int page = 1; page < ranks[0].length; page++) {
+            long score = 0;
+            boolean all = true;
+            for (int[] lemma : ranks) {
+                all &= lemma[page] > 0;
+                score += PostingList.scaleRank(lemma[page]);
+            }
+            if (all) {
+                hits.add(new long[]{score, page});
+            }
+        }
+        hits.sort(Comparator.<long[]>comparingLong(hit -> -hit[0]).thenComparingLong(hit -> hit[1]));
+        return hits.subList(0, Math.min(k, hits.size()));
+    }
+
+    private static void assertTopK(List<long[]> expected, TopKScorer scorer) {
+        assertEquals(expected.size(), scorer.resultCount());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], scorer.scoreAt(i), "релевантность результата " + i);
+            assertEquals(expected.get(i)[1], scorer.pageAt(i), "страница результата " + i);
+            assertEquals(SITE, scorer.siteAt(i));
+        }
+    }
+
+    @Test
+    void blockMaxSkippingKeepsExactTopK() {
+        int pages = 20_000;
+        int[][] ranks = new int[2][pages + 1];
+        for (int page = 1; page <= pages; page++) {
+            ranks[0][page] = 1;
+            ranks[1][page] = page % 3 == 0 ? 0 : 1;
+        }
+        // Сильные страницы в начале заполняют кучу, дальше почти все блоки заведомо слабее
+        for (int page = 1; page <= 20; page++) {
+            ranks[0][page] = 50 + page;
+            ranks[1][page] = 1;
+        }
+        // Сильная страница в конце не должна потеряться при пропуске блоков
+        ranks[0][19_001] = 500;
+        List<String> lemmas = List.of("купить", "телефон");
+        SearchIndex index = index(lemmas, ranks);
+        TopKScorer scorer = new TopKScorer();
+        scorer.reset(10);
+
+        scorer.scoreSite(SITE, index, lemmas);
+        scorer.finish();
+
+        assertTopK(bruteForce(ranks, 10), scorer);
+        assertEquals(19_001, scorer.pageAt(0));
+        assertTrue(scorer.skippedBlocks() > 0);
+        assertFalse(scorer.isTotalHitsExact());
+        assertTrue(scorer.totalHits() >= TopKScorer.EXACT_HITS);
+    }
+
+    @Test
+    void randomIndexesMatchBruteForce() {
+        Random random = new Random(7);
+        List<String> lemmas = List.of("дом", "сад", "лес");
+        for (int round = 0; round < 20; round++) {
+            int pages = 3_000 + random.nextInt(3_000);
+            int[][] ranks = new int[lemmas.size()][pages + 1];
+            for (int[] lemma : ranks) {
+                for (int page = 1; page <= pages; page++) {
+                    if (random.nextInt(10) < 8) {
+                        lemma[page] = random.nextInt(100) < 2 ? 20 + random.nextInt(80) : 1 + random.nextInt(3);
+                    }
+                }
+            }
+            int k = 1 + random.nextInt(20);
+            TopKScorer scorer = new TopKScorer();
+            scorer.reset(k);
+
+            scorer.scoreSite(SITE, index(lemmas, ranks), lemmas);
+            scorer.finish();
+
+            assertTopK(bruteForce(ranks, k), scorer);
+        }
+    }
+
+    @Test
+    void countsAllHitsExactlyBelowThreshold() {
+        int[][] ranks = new int[2][501];
+        for (int page = 1; page <= 500; page++) {
+            ranks[0][page] = page;
+            ranks[1][page] = page % 2 == 0 ? 1 : 0;
+        }
+        List<String> lemmas = List.of("кот", "пёс");
+        TopKScorer scorer = new TopKScorer();
+        scorer.reset(5);
+
+        scorer.scoreSite(SITE, index(lemmas, ranks), lemmas);
+        scorer.finish();
+
+        assertEquals(250, scorer.totalHits());
+        assertTrue(scorer.isTotalHitsExact());
+        assertEquals(0, scorer.skippedBlocks());
+        assertTopK(bruteForce(ranks, 5), scorer);
+    }
+
+    @Test
+    void missingLemmaGivesNoResults() {
+        int[][] ranks = new int[1][11];
+        for (int page = 1; page <= 10; page++) {
+            ranks[0][page] = 1;
+        }
+        SearchIndex index = index(List.of("есть"), ranks);
+        TopKScorer scorer = new TopKScorer();
+        scorer.reset(3);
+
+        scorer.scoreSite(SITE, index, List.of("есть", "нет"));
+        scorer.finish();
+
+        assertEquals(0, scorer.resultCount());
+        assertEquals(0, scorer.totalHits());
+    }
+}
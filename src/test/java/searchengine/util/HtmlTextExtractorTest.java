@@ -0,0 +1,64 @@
+package searchengine.util;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HtmlTextExtractorTest {
+
+    private static void assertSameAsJsoup(String html) {
+        assertEquals(Jsoup.parse(html).text(), HtmlTextExtractor.extract(html, null).getText(), html);
+    }
+
+    @Test
+    void textMatchesJsoupForTypicalMarkup() {
+        assertSameAsJsoup("<html><head><title>Магазин</title></head>"
+                + "<body><h1>Телефоны</h1><p>Купить <b>недорого</b> в Москве</p><div>Доставка</div></body></html>");
+        assertSameAsJsoup("<ul><li>Первый</li><li>Второй</li></ul><table><tr><td>1</td><td>2</td></tr></table>");
+        assertSameAsJsoup("<p>Строка<br>другая строка<br/>третья</p>");
+        assertSameAsJsoup("<p>  много\n\t пробелов   и\r\nпереводов  </p>");
+        assertSameAsJsoup("<p>сло<i>во</i> целиком, <a href=\"/x\">ссылка</a>.</p>");
+    }
+
+    @Test
+    void skippedElementsAndCommentsMatchJsoup() {
+        assertSameAsJsoup("<p>до</p><script>var a = '<p>не текст</p>';</script><p>после</p>");
+        assertSameAsJsoup("<style>p { color: red }</style><p>текст</p><!-- <p>скрыто</p> -->");
+        assertSameAsJsoup("<!DOCTYPE html><html><body><p>страница</p><?xml-stylesheet href=\"a.xsl\"?></body></html>");
+        assertSameAsJsoup("<p>а</p><SCRIPT type=\"text/javascript\">x < y</SCRIPT><p>б</p>");
+    }
+
+    // В отличие от Jsoup, содержимое noscript, template и svg в текст не попадает: посетитель его не видит
+    @Test
+    void hiddenContainersAreSkipped() {
+        String html = "<p>до</p><noscript>включите JS</noscript><template><p>шаблон</p></template>"
+                + "<svg><text>график</text></svg><p>после</p>";
+
+        assertEquals("до после", HtmlTextExtractor.extract(html, null).getText());
+    }
+
+    @Test
+    void entitiesMatchJsoup() {
+        assertSameAsJsoup("<p>&laquo;Кавычки&raquo; &mdash; тире &amp; амперсанд &lt;тег&gt;</p>");
+        assertSameAsJsoup("<p>&#1055;&#x440;&#1080;&#1074;&#1077;&#1090; 5&nbsp;кг &copy; 2024</p>");
+        assertSameAsJsoup("<p>a &unknown; b &amp; c</p>");
+    }
+
+    @Test
+    void extractsTitleAndResolvesLinks() {
+        String html = "<html><head><title> Главная &amp; новости </title></head><body>"
+                + "<a href=\"/catalog\">Каталог</a><a href=\"news/1.html\">Новость</a>"
+                + "<a href=\"https://other.org/\">Чужой</a><a href=\"#top\">Наверх</a></body></html>";
+
+        HtmlTextExtractor.Result result = HtmlTextExtractor.extract(html, "https://example.com/section/index.html");
+
+        assertEquals(Jsoup.parse(html).title(), result.getTitle());
+        List<String> links = result.getLinks();
+        assertEquals("https://example.com/catalog", links.get(0));
+        assertEquals("https://example.com/section/news/1.html", links.get(1));
+        assertEquals("https://other.org/", links.get(2));
+    }
+}
@@ -0,0 +1,133 @@
+package searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostingListTest {
+
+    private static final int SIZE = 1000;
+
+    // Страницы через одну с рангом, зависящим от номера, — несколько полных блоков и неполный последний
+    private static int[] docs() {
+        int[] docs = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            docs[i] = 2 * i + 1;
+        }
+        return docs;
+    }
+
+    private static int[] ranks() {
+        int[] ranks = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            ranks[i] = (i * 37) % 101;
+        }
+        return ranks;
+    }
+
+    @Test
+    void decodesVarIntDeltasOfAnySize() {
+        int[] docs = {0, 1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152, 268_435_455, Integer.MAX_VALUE - 1};
+        PostingList list = PostingList.of(docs, new int[docs.length], docs.length);
+
+        assertArrayEquals(docs, list.decodeDocs());
+        PostingList.Cursor cursor = list.cursor();
+        for (int doc : docs) {
+            assertEquals(doc, cursor.nextDoc());
+        }
+        assertEquals(PostingList.NO_MORE_DOCS, cursor.nextDoc());
+    }
+
+    @Test
+    void advanceFindsFirstDocNotLessThanTarget() {
+        int[] docs = docs();
+        int[] ranks = ranks();
+        PostingList list = PostingList.of(docs, ranks, SIZE);
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            PostingList.Cursor cursor = list.cursor();
+            int target = 0;
+            while (true) {
+                target += 1 + random.nextInt(3 * PostingList.BLOCK_SIZE);
+                int expected = firstNotLess(docs, target);
+                int doc = cursor.advance(target);
+                if (expected < 0) {
+                    assertEquals(PostingList.NO_MORE_DOCS, doc);
+                    break;
+                }
+                assertEquals(docs[expected], doc);
+                assertEquals(expected, cursor.position());
+                assertEquals(ranks[expected], cursor.rank());
+            }
+        }
+    }
+
+    @Test
+    void advanceToCurrentDocDoesNotMove() {
+        PostingList.Cursor cursor = PostingList.of(docs(), ranks(), SIZE).cursor();
+        assertEquals(301, cursor.advance(300));
+        assertEquals(301, cursor.advance(301));
+        assertEquals(301, cursor.advance(10));
+        assertEquals(303, cursor.nextDoc());
+    }
+
+    @Test
+    void blockBoundsCoverTheirDocs() {
+        int[] docs = docs();
+        int[] ranks = ranks();
+        PostingList.Cursor cursor = PostingList.of(docs, ranks, SIZE).cursor();
+        int blocks = (SIZE + PostingList.BLOCK_SIZE - 1) / PostingList.BLOCK_SIZE;
+        for (int block = 0; block < blocks; block++) {
+            int from = block * PostingList.BLOCK_SIZE;
+            int to = Math.min(SIZE, from + PostingList.BLOCK_SIZE);
+            int max = 0;
+            for (int i = from; i < to; i++) {
+                max = Math.max(max, ranks[i]);
+            }
+            assertEquals(block, cursor.blockOf(docs[from]));
+            assertEquals(block, cursor.blockOf(docs[to - 1]));
+            assertEquals(docs[to - 1], cursor.blockLastDoc(block));
+            assertEquals(max, cursor.blockMaxRank(block));
+        }
+        assertEquals(-1, cursor.blockOf(docs[SIZE - 1] + 1));
+    }
+
+    @Test
+    void mergeKeepsLastAddedValueForRepeatedDoc() {
+        PostingList list = PostingList.of(new int[]{1, 5, 9}, new int[]{10, 50, 90}, 3);
+
+        PostingList merged = list.merge(new int[]{5, 3, 5, 9}, new int[]{70, 30, 20, 95}, 4);
+
+        assertArrayEquals(new int[]{1, 3, 5, 9}, merged.decodeDocs());
+        assertEquals(10, merged.rankAt(0));
+        assertEquals(30, merged.rankAt(1));
+        assertEquals(20, merged.rankAt(2));
+        assertEquals(95, merged.rankAt(3));
+        assertEquals(95, merged.maxRank());
+    }
+
+    @Test
+    void withoutDropsMatchingDocs() {
+        PostingList list = PostingList.of(docs(), ranks(), SIZE);
+
+        PostingList kept = list.without(doc -> doc % 4 == 1);
+
+        assertEquals(SIZE / 2, kept.size());
+        PostingList.Cursor cursor = kept.cursor();
+        assertEquals(3, cursor.nextDoc());
+        assertEquals(ranks()[1], cursor.rank());
+        assertEquals(7, cursor.nextDoc());
+    }
+
+    private static int firstNotLess(int[] docs, int target) {
+        for (int i = 0; i < docs.length; i++) {
+            if (docs[i] >= target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}